@@ -0,0 +1,38 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.*;
+
+/**
+ * The problems of {@link MainSimpleProblem} and
+ * {@link MainComplexProblems} used by the benchmarks, selected by
+ * name in a JMH parameter.
+ */
+public enum BenchProblems {
+
+    SIMPLE(new int[] {10, 20, 30, 40}, 120, 8, false),
+    COMPLEX_1(new int[] {3, 4, 6, 10, 12, 78, 89, 560}, 6176, 14, true),
+    COMPLEX_2(new int[] {8, 10, 2, 1, 5, 50}, 899, 14, true);
+
+    final int[]   nums;
+    final int     target;
+    final int     bvBits;
+    final boolean noOverflows;
+
+    BenchProblems(int[] nums, int target, int bvBits, boolean noOverflows) {
+        this.nums        = nums;
+        this.target      = target;
+        this.bvBits      = bvBits;
+        this.noOverflows = noOverflows;
+    }
+
+    /**
+     * A transition system of the problem built in context.
+     */
+    ChiffresTransitionSystem newSystem(Context context, StackEncoding stackEncoding) {
+        ChiffresTransitionSystem ts =
+            new ChiffresTransitionSystem(context, nums, target, bvBits, noOverflows);
+        ts.setStackEncoding(stackEncoding);
+
+        return ts;
+    }
+}
@@ -0,0 +1,49 @@
+package fr.n7.smt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.microsoft.z3.*;
+
+/**
+ * Time to build an exactly-one constraint over n literals with each
+ * cardinality encoding (cf. {@link Z3Utils#exactlyOne}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExactlyOneBenchmark {
+
+    @Param({"8", "32", "128"})
+    public int n;
+
+    @Param({"PAIRWISE", "SEQUENTIAL", "BIMANDER", "PSEUDO_BOOLEAN"})
+    public CardinalityEncoding encoding;
+
+    private Context    context;
+    private BoolExpr[] literals;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        context  = Z3Utils.newZ3Context();
+        literals = new BoolExpr[n];
+
+        for (int i = 0; i < n; i++) {
+            literals[i] = context.mkBoolConst("l" + i);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BoolExpr exactlyOne() {
+        return Z3Utils.exactlyOne(context, encoding, literals);
+    }
+}
@@ -0,0 +1,71 @@
+package fr.n7.smt;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.microsoft.z3.*;
+
+/**
+ * Time to decode the solution of a problem from its model: printing
+ * it with {@link ChiffresTransitionSystem#printModel} (to a discarded
+ * stream) and extracting its actions with
+ * {@link ChiffresTransitionSystem#getTrace}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PrintModelBenchmark {
+
+    @Param({"SIMPLE", "COMPLEX_2"})
+    public BenchProblems problem;
+
+    @Param({"ARRAY", "REGISTERS"})
+    public StackEncoding stackEncoding;
+
+    private Context                  context;
+    private ChiffresTransitionSystem system;
+    private Model                    model;
+    private int                      steps;
+    private PrintStream              out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Z3Utils.newZ3Context();
+        system  = problem.newSystem(context, stackEncoding);
+
+        BMC bmc = new BMC(system, system.getMaxNofSteps(), false, false);
+        bmc.setVerbose(false);
+
+        if (bmc.solve(-1) != Status.SATISFIABLE) {
+            throw new IllegalStateException(problem + " has no solution");
+        }
+
+        model = bmc.getModel();
+        steps = bmc.getModelSteps();
+
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(out);
+        context.close();
+    }
+
+    @Benchmark
+    public void printModel() {
+        system.printModel(model, steps);
+    }
+
+    @Benchmark
+    public int[] getTrace() {
+        return system.getTrace(model, steps);
+    }
+}
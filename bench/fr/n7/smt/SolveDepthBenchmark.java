@@ -0,0 +1,70 @@
+package fr.n7.smt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.microsoft.z3.*;
+
+/**
+ * Time of solver.check() at a given depth, i.e. with the initial
+ * state, the transitions up to depth and the final state at depth,
+ * as checked by the exact resolution of {@link BMC}.
+ *
+ * The solver is rebuilt before each invocation so that clauses learnt
+ * by a check are not reused by the next one. Depths at which the
+ * final state is unreachable are checked anyway.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SolveDepthBenchmark {
+
+    @Param({"SIMPLE", "COMPLEX_1", "COMPLEX_2"})
+    public BenchProblems problem;
+
+    @Param({"3", "5", "7"})
+    public int depth;
+
+    @Param({"ARRAY", "REGISTERS"})
+    public StackEncoding stackEncoding;
+
+    private Context                  context;
+    private ChiffresTransitionSystem system;
+    private BoolExpr[]               formulas;
+    private Solver                   solver;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        context = Z3Utils.newZ3Context();
+        system  = problem.newSystem(context, stackEncoding);
+
+        int steps = Math.min(depth, system.getMaxNofSteps());
+        formulas  = new BoolExpr[steps + 2];
+
+        formulas[0] = system.initialStateFormula();
+        for (int step = 0; step < steps; step++) {
+            formulas[step + 1] = system.transitionFormula(step);
+        }
+        formulas[steps + 1] = system.finalStateFormula(steps);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        solver = context.mkSolver();
+        solver.add(formulas);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Status check() {
+        return solver.check();
+    }
+}
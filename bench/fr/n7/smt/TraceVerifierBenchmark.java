@@ -0,0 +1,46 @@
+package fr.n7.smt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Throughput of {@link TraceVerifier#verify} on the solution of
+ * {@link BenchProblems#COMPLEX_1}, found once with
+ * {@link ExplicitChiffresSolver}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceVerifierBenchmark {
+
+    @Param({"EXACT", "BIT_VECTOR"})
+    public TraceVerifier.Mode mode;
+
+    private BenchProblems pb = BenchProblems.COMPLEX_1;
+    private TraceVerifier verifier;
+    private int[]         trace;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ExplicitChiffresSolver solver =
+            new ExplicitChiffresSolver(pb.nums, pb.target, pb.bvBits, pb.noOverflows);
+
+        if (solver.solve(-1) != Status.SATISFIABLE) {
+            throw new IllegalStateException(pb + " has no solution");
+        }
+
+        verifier = new TraceVerifier();
+        trace    = solver.getTrace();
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return verifier.verify(pb.nums, pb.target, pb.bvBits, mode, trace);
+    }
+}
@@ -0,0 +1,49 @@
+package fr.n7.smt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.microsoft.z3.*;
+
+/**
+ * Time to build the transition formula of a step of the first complex
+ * problem, for increasing steps and both stack encodings.
+ *
+ * A new context is created for each iteration so that the hash
+ * consing of Z3 does not reuse the formulas of previous iterations
+ * for long.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransitionFormulaBenchmark {
+
+    @Param({"0", "3", "7", "11", "14"})
+    public int step;
+
+    @Param({"ARRAY", "REGISTERS"})
+    public StackEncoding stackEncoding;
+
+    private Context                  context;
+    private ChiffresTransitionSystem system;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        context = Z3Utils.newZ3Context();
+        system  = BenchProblems.COMPLEX_1.newSystem(context, stackEncoding);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BoolExpr transitionFormula() {
+        return system.transitionFormula(step);
+    }
+}
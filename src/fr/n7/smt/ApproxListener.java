@@ -0,0 +1,22 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Model;
+
+/**
+ * A listener notified by the approximate resolution of {@link BMC}
+ * each time it finds a solution closer to the expected property than
+ * the previous ones.
+ */
+public interface ApproxListener {
+
+    /**
+     * Called with each improved solution, on the thread solving.
+     *
+     * @param model the model of the solution, valid as long as the
+     *        context of the transition system is open
+     * @param steps the number of steps of the solution
+     * @param error the value of the approximation criterion of the
+     *        solution, 0 for an exact solution
+     */
+    void improved(Model model, int steps, long error);
+}
@@ -0,0 +1,95 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.*;
+
+/**
+ * Stack encoded as an array from integers to bit vectors and an
+ * integer index, cf. {@link StackEncoding#ARRAY}.
+ */
+class ArrayStack implements ChiffresStack {
+
+    private Context       context;
+    private ChiffresCache cache;
+    private int           nOfSlots;
+
+    ArrayStack(Context context, ChiffresCache cache, int nOfSlots) {
+        this.context  = context;
+        this.cache    = cache;
+        this.nOfSlots = nOfSlots;
+    }
+
+    @Override
+    public BoolExpr sizeIs(int step, int size) {
+        return context.mkEq(cache.idxStateVar(step), context.mkInt(size));
+    }
+
+    @Override
+    public BoolExpr sizeAtLeast(int step, int size) {
+        return context.mkGe(cache.idxStateVar(step), context.mkInt(size));
+    }
+
+    @Override
+    public BitVecExpr top(int step, int depth) {
+        IntExpr i = (IntExpr) context.mkSub(cache.idxStateVar(step),
+                                            context.mkInt(depth));
+
+        return (BitVecExpr) context.mkSelect(cache.stackStateVar(step), i);
+    }
+
+    @Override
+    public BitVecExpr bottom(int step) {
+        return (BitVecExpr) context.mkSelect(cache.stackStateVar(step),
+                                             context.mkInt(0));
+    }
+
+    @Override
+    public BoolExpr pushFormula(int step, BitVecExpr value) {
+        IntExpr idx     = cache.idxStateVar(step);
+        IntExpr nextIdx = cache.idxStateVar(step + 1);
+
+        BoolExpr wellIncrementedIndex =
+            context.mkEq(nextIdx, context.mkAdd(idx, context.mkInt(1)));
+
+        ArrayExpr<IntSort, BitVecSort> expectedStack =
+            context.mkStore(cache.stackStateVar(step), idx, value);
+
+        return context.mkAnd(context.mkEq(cache.stackStateVar(step + 1), expectedStack),
+                             wellIncrementedIndex);
+    }
+
+    @Override
+    public BoolExpr reduceFormula(int step, BitVecExpr value) {
+        IntExpr idx     = cache.idxStateVar(step);
+        IntExpr nextIdx = cache.idxStateVar(step + 1);
+
+        IntExpr i1 = (IntExpr) context.mkSub(idx, context.mkInt(1));
+        IntExpr i2 = (IntExpr) context.mkSub(idx, context.mkInt(2));
+
+        ArrayExpr<IntSort, BitVecSort> expectedStack =
+            context.mkStore(cache.stackStateVar(step), i2, value);
+
+        return context.mkAnd(context.mkEq(i1, nextIdx),
+                             context.mkEq(expectedStack, cache.stackStateVar(step + 1)));
+    }
+
+    @Override
+    public Expr<?>[] stateVars(int step) {
+        return new Expr<?>[] { cache.stackStateVar(step), cache.idxStateVar(step) };
+    }
+
+    @Override
+    public int nOfSlots() {
+        return this.nOfSlots;
+    }
+
+    @Override
+    public BitVecExpr slot(int step, int slot) {
+        return (BitVecExpr) context.mkSelect(cache.stackStateVar(step),
+                                             context.mkInt(slot));
+    }
+
+    @Override
+    public int sizeIn(Model m, int step) {
+        return ((IntNum) m.eval(cache.idxStateVar(step), true)).getInt();
+    }
+}
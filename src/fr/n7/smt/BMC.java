@@ -1,6 +1,12 @@
 package fr.n7.smt;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
 import com.microsoft.z3.*;
+import com.microsoft.z3.enumerations.Z3_decl_kind;
 
 /**
  * A Bounded Model-Checking (BMC) motor on a transition system.
@@ -17,10 +23,34 @@ public class BMC {
     private int              maxNOfSteps;
     private boolean          useApprox;
     private boolean          simulation;
+    private int              randomSeed = -1;
+    private boolean          verbose    = true;
+    private SolverProfile    profile    = SolverProfile.DEFAULT;
+    private volatile boolean interrupted = false;
+    private boolean          splitBudget = false;
+    private boolean          solving     = false; // guarded by this
+    private Engine           engine      = Engine.UNROLLING;
+    private boolean          assumptions = false;
+    private ApproxListener   approxListener;
+    private BmcListener      listener;
+
+    // formulas built since the previous check of the exact resolution
+    private long             buildNanos;
+    private int              transitionNodes;
+
+    // model of the last solution found and its number of steps
+    private Model            model;
+    private int              modelSteps;
+
+    // inductive invariant of the last UNSAT found by Spacer
+    private Expr<?>          invariant;
 
     private void printParams() {
         System.out.println("\nBMC parameters:");
         System.out.println("- max nb of steps: " + this.maxNOfSteps);
+        System.out.println("- engine         : " + this.engine);
+        System.out.println("- assumptions    : " + this.assumptions);
+        System.out.println("- solver profile : " + this.profile);
         this.system.printParams();
     }
 
@@ -37,7 +67,7 @@ public class BMC {
                int maxNOfSteps,
                boolean useApprox,
                boolean simulation) {
-        this.context = Z3Utils.getZ3Context();
+        this.context = system.getContext();
 
         // initialize system
         this.system      = system;
@@ -46,6 +76,253 @@ public class BMC {
         this.simulation  = simulation;
     }
 
+    /**
+     * Create a BMC instance for a particular transition system using
+     * a particular encoding for the cardinality constraints of the
+     * transition formulas.
+     *
+     * @param system the transition system
+     * @param maxNOfSteps the maximum number of unrolling steps
+     * @param useApprox to use approximate resolution when needed
+     * @param simulation if true, then BMC is used to simulate the system
+     * @param cardinality the encoding of cardinality constraints
+     */
+    public BMC(TransitionSystem system,
+               int maxNOfSteps,
+               boolean useApprox,
+               boolean simulation,
+               CardinalityEncoding cardinality) {
+        this(system, maxNOfSteps, useApprox, simulation);
+
+        system.setCardinalityEncoding(cardinality);
+    }
+
+    /**
+     * Sets the random seed of the solvers. A negative seed keeps the
+     * default seed of Z3.
+     */
+    public void setRandomSeed(int randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
+    /**
+     * Sets the profile used to create solvers. The model generation
+     * of the profile must be enabled in the context of the system.
+     */
+    public void setProfile(SolverProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Sets the engine used by the exact resolution. With
+     * {@link Engine#SPACER}, maxNOfSteps is ignored by the proof and
+     * only bounds the unrolling used to print a solution.
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * The model of the solution found by the last resolution, null if
+     * there is none. The model is only valid as long as the context of
+     * the transition system is open.
+     */
+    public Model getModel() {
+        return this.model;
+    }
+
+    /**
+     * The number of steps of the model of the last resolution.
+     */
+    public int getModelSteps() {
+        return this.modelSteps;
+    }
+
+    /**
+     * The inductive invariant over-approximating the reachable states
+     * (over the variables of {@link TransitionSystem#hornStateVars})
+     * that proved UNSAT in the last resolution with
+     * {@link Engine#SPACER}, null if there is none. It is only valid
+     * as long as the context of the transition system is open.
+     */
+    public Expr<?> getInvariant() {
+        return this.invariant;
+    }
+
+    /**
+     * If verbose is false, nothing is printed during resolution.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Interrupts the resolution: the current check of the solver is
+     * stopped and solve returns UNKNOWN. May be called from another
+     * thread while the BMC instance is solving.
+     */
+    public void interrupt() {
+        this.interrupted = true;
+        this.interruptCheck();
+    }
+
+    /**
+     * Stops the current check, if any. The context is only
+     * interrupted while solving, as it may be closed afterwards.
+     */
+    private synchronized void interruptCheck() {
+        if (this.solving) {
+            this.context.interrupt();
+        }
+    }
+
+    /**
+     * If splitBudget is true, the time budget of the exact resolution
+     * is split across depths: the check at step k gets a share of the
+     * remaining time proportional to k + 1 among the remaining steps,
+     * so that deep steps get a predictable share of the budget.
+     */
+    public void setStepBudgets(boolean splitBudget) {
+        this.splitBudget = splitBudget;
+    }
+
+    /**
+     * If assumptions is true, the final state formula of each depth of
+     * the exact resolution is guarded by an activation literal passed
+     * as an assumption to the check instead of being added in a
+     * push/pop scope. Clauses learnt at a depth are then kept for the
+     * next ones, and the solver is not forced into incremental mode
+     * by scopes.
+     */
+    public void setAssumptions(boolean assumptions) {
+        this.assumptions = assumptions;
+    }
+
+    /**
+     * Sets the listener notified of each improved solution found by
+     * the approximate resolution, null for none.
+     */
+    public void setApproxListener(ApproxListener approxListener) {
+        this.approxListener = approxListener;
+    }
+
+    /**
+     * Sets the listener notified of the metrics of each step checked
+     * by the exact resolution, null for none. The metrics are also
+     * committed as JFR events (cf. {@link BmcStepEvent}) when they are
+     * enabled.
+     */
+    public void setListener(BmcListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the random seed on solver if necessary.
+     */
+    private void configure(Solver solver) {
+        if (this.randomSeed >= 0) {
+            Params p = this.context.mkParams();
+            p.add("random_seed", this.randomSeed);
+            solver.setParameters(p);
+        }
+    }
+
+    /**
+     * The deadline of the check at step: the global deadline or, if
+     * the budget is split across depths, a share of the remaining
+     * time proportional to step + 1 among the remaining steps.
+     */
+    private Deadline stepDeadline(Deadline deadline, int step) {
+        if (!this.splitBudget || deadline.isUnbounded()) {
+            return deadline;
+        }
+
+        long weights = 0;
+        for (int s = step; s <= this.maxNOfSteps; s++) {
+            weights += s + 1;
+        }
+
+        return deadline.min((long) ((double) deadline.remainingMillis() * (step + 1) / weights));
+    }
+
+    /**
+     * Sets the timeout of solver to the remaining time of deadline.
+     */
+    private void setTimeout(Solver solver, Deadline deadline) {
+        if (!deadline.isUnbounded()) {
+            Params p = this.context.mkParams();
+            p.add("timeout", deadline.z3Timeout());
+            solver.setParameters(p);
+        }
+    }
+
+    /**
+     * Adds the transition formula of step to solver, accounting for
+     * its construction in the metrics of the next check.
+     */
+    private void addTransition(Solver solver, int step, boolean instrumented) {
+        long start = System.nanoTime();
+        BoolExpr transition = system.transitionFormula(step);
+        this.buildNanos += System.nanoTime() - start;
+
+        if (instrumented) {
+            this.transitionNodes += Z3Utils.dagSize(transition);
+        }
+
+        solver.add(transition);
+    }
+
+    /**
+     * The first statistic of solver among keys, -1 if none exists.
+     */
+    private static double statistic(Statistics stats, String... keys) {
+        for (String key : keys) {
+            Statistics.Entry e = stats.get(key);
+
+            if (e != null) {
+                return e.isUInt() ? e.getUIntValue() : e.getDoubleValue();
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Publishes the metrics of the check of step to the listener and
+     * as a JFR event.
+     */
+    private void publish(BmcStepEvent event, Solver solver, int step, Status status,
+                         long checkNanos, long modelNanos) {
+        Statistics stats = solver.getStatistics();
+
+        StepMetrics metrics =
+            new StepMetrics(step, status, this.buildNanos, checkNanos, modelNanos,
+                            this.transitionNodes,
+                            (long) statistic(stats, "conflicts", "sat conflicts"),
+                            (long) statistic(stats, "decisions", "sat decisions"),
+                            statistic(stats, "memory"));
+
+        this.buildNanos      = 0;
+        this.transitionNodes = 0;
+
+        if (event.isEnabled()) {
+            event.step            = step;
+            event.status          = status.name();
+            event.buildTime       = metrics.getBuildNanos();
+            event.checkTime       = checkNanos;
+            event.modelTime       = modelNanos;
+            event.transitionNodes = metrics.getTransitionNodes();
+            event.conflicts       = metrics.getConflicts();
+            event.decisions       = metrics.getDecisions();
+            event.memory          = (long) (metrics.getMemoryMB() * 1024 * 1024);
+            event.commit();
+        }
+
+        if (this.listener != null) {
+            this.listener.stepChecked(metrics);
+        }
+    }
+
     /**
      * This method tries to exactly solve the BMC problem. It unrolls
      * at most maxNOfSteps transitions starting from initial state.
@@ -54,9 +331,11 @@ public class BMC {
      *
      * 1. a transition formula for the next step is added to the solver
      * 2. the final state formula for the next step is pushed into the solver
+     *    (or guarded by an activation literal that is assumed, cf.
+     *    {@link #setAssumptions(boolean)})
      * 3. if the problem is SAT then solution is printed
      *    else if the problem is UNSAT, the final state formula is popped
-     *    and the next iteration is done
+     *    (or its literal is negated) and the next iteration is done
      *
      *    If the problem is UNKNOWN, the UNKNOWN status is returned.
      * 4. if the problem is UNSAT for all iterations, the UNSAT status
@@ -66,22 +345,37 @@ public class BMC {
      * then the final state formula is always True and the BMC is executed
      * exactly maxNOfSteps.
      *
-     * @param timeout the timeout to use. If negative, no timeout is used
+     * Steps at which the final state is statically unreachable (cf.
+     * {@link TransitionSystem#isFinalStateReachable(int)}) are not
+     * checked.
+     *
+     * Each check is bounded by the remaining time of deadline (or by
+     * its share of this time if the budget is split across depths,
+     * cf. {@link #setStepBudgets(boolean)}). If a step exhausts its
+     * share, the next steps are still explored but UNSAT can no
+     * longer be concluded.
+     *
+     * @param deadline the deadline of the resolution
      */
-    private Status solveExact(int timeout) {
+    private Status solveExact(Deadline deadline) {
         int step = 0;
         Status res = Status.UNKNOWN;
+        boolean complete = true;
+        boolean instrumented = this.listener != null || new BmcStepEvent().isEnabled();
 
-        // TODO: to complete!
-        Solver solver = this.context.mkSolver();
+        if (!this.profile.supports(system.getLogic())) {
+            throw new Error("solver profile " + this.profile.getName() +
+                            " cannot solve " + system.getLogic() + " problems");
+        }
 
-        // add initial state formula
-        solver.add(system.initialStateFormula());
+        Solver solver = this.profile.mkSolver(this.context);
+        this.configure(solver);
 
-        // config timeout if necessary
-        final long start = System.currentTimeMillis();
-        final long maxTimePassed = (timeout > 0) ? timeout*1000 : 1000000000;
+        this.buildNanos      = 0;
+        this.transitionNodes = 0;
 
+        // add initial state formula
+        solver.add(system.initialStateFormula());
 
         // main loop:
         // - if not in simulation mode, add final state formula
@@ -91,108 +385,484 @@ public class BMC {
         //   - if UNSAT, add a new transition step
         //   - if SAT, return SATISFIABLE if not in simulation mode
         //   - print simple info (SAT/UNSAT/UNKWON at step XXX etc)
-        while (step <= this.maxNOfSteps && (System.currentTimeMillis() - start) < maxTimePassed) {
-            
-            boolean test = !simulation && system.finalStateFormula(step) != null;
+        while (step <= this.maxNOfSteps) {
+            if (interrupted || deadline.expired()) {
+                return Status.UNKNOWN;
+            }
+
+            if (!simulation && !system.isFinalStateReachable(step)) {
+                if (verbose) {
+                    System.out.println("UNREACHABLE at step " + step);
+                }
+
+                if (step != maxNOfSteps) {
+                    this.addTransition(solver, step, instrumented);
+                }
 
-            if (test) {
-                solver.push();
-                solver.add(system.finalStateFormula(step));
+                step++;
+                continue;
             }
 
-            res = solver.check();
-            System.out.println("" + res + " at step " + step);
+            BmcStepEvent event = new BmcStepEvent();
+            event.begin();
 
-            if (res == Status.UNKNOWN){
-                return Status.UNKNOWN;                
+            long start = System.nanoTime();
+            BoolExpr finalState = simulation ? null : system.finalStateFormula(step);
+            BoolExpr active     = null;
+
+            if (finalState != null) {
+                if (assumptions) {
+                    active = context.mkBoolConst("final@" + step);
+                    solver.add(context.mkImplies(active, finalState));
+                } else {
+                    solver.push();
+                    solver.add(finalState);
+                }
+            }
+
+            Deadline budget = this.stepDeadline(deadline, step);
+            this.setTimeout(solver, budget);
+
+            long checkStart = System.nanoTime();
+            this.buildNanos += checkStart - start;
+
+            res = active == null ? solver.check() : solver.check(active);
+
+            long checkNanos = System.nanoTime() - checkStart;
+
+            if (verbose) {
+                System.out.println("" + res + " at step " + step);
             }
 
-            if(res == Status.SATISFIABLE){
+            if (res == Status.UNKNOWN) {
+                if (instrumented) {
+                    this.publish(event, solver, step, res, checkNanos, 0);
+                }
+
+                if (budget == deadline || deadline.expired() || interrupted) {
+                    return Status.UNKNOWN;
+                }
+
+                // only the share of this step is exhausted
+                complete = false;
+            } else if (res == Status.UNSATISFIABLE || simulation) {
+                if (instrumented) {
+                    this.publish(event, solver, step, res, checkNanos, 0);
+                }
+            }
+
+            if (res == Status.SATISFIABLE) {
                 if (!simulation) {
-                    system.printModel(solver.getModel(), step);
+                    long modelStart = System.nanoTime();
+
+                    this.model      = solver.getModel();
+                    this.modelSteps = step;
+
+                    if (instrumented) {
+                        this.publish(event, solver, step, res, checkNanos,
+                                     System.nanoTime() - modelStart);
+                    }
+
+                    if (verbose) {
+                        system.printModel(this.model, step);
+                    }
                     return Status.SATISFIABLE;
                 }
             }
 
-            if (test) {
+            if (active != null) {
+                // the final state of this depth is never required again
+                solver.add(context.mkNot(active));
+            } else if (finalState != null) {
                 solver.pop();
             }
-            
-            if(step != maxNOfSteps) solver.add(system.transitionFormula(step));
-            step++;           
 
+            if (step != maxNOfSteps) {
+                this.addTransition(solver, step, instrumented);
+            }
+
+            step++;
         }
 
         // return UNSATISFIABLE or SATISFIABLE if in simulation mode
 
-        return (simulation ? Status.SATISFIABLE : Status.UNSATISFIABLE);
-    } 
+        if (simulation) {
+            return Status.SATISFIABLE;
+        }
+
+        return complete ? Status.UNSATISFIABLE : Status.UNKNOWN;
+    }
+
+    /**
+     * The uninterpreted constants of es.
+     */
+    private static Expr<?>[] freeConstants(Expr<?>... es) {
+        HashSet<Expr<?>> visited = new HashSet<>();
+        ArrayList<Expr<?>> consts = new ArrayList<>();
+        ArrayDeque<Expr<?>> todo = new ArrayDeque<>();
+
+        for (Expr<?> e : es) {
+            todo.push(e);
+        }
+
+        while (!todo.isEmpty()) {
+            Expr<?> cur = todo.pop();
+
+            if (!cur.isApp() || !visited.add(cur)) {
+                continue;
+            }
+
+            if (cur.isConst() &&
+                cur.getFuncDecl().getDeclKind() == Z3_decl_kind.Z3_OP_UNINTERPRETED) {
+                consts.add(cur);
+            }
+
+            for (Expr<?> arg : cur.getArgs()) {
+                todo.push(arg);
+            }
+        }
+
+        return consts.toArray(new Expr<?>[0]);
+    }
 
     /**
-     * This method tries to approximatively solve the BMC problem using
-     * a Max-SMT solver. The main differences with the exact solver are
-     * are the following:
+     * The Horn clause body => head universally quantified over the
+     * constants of body and of the arguments of head (a nullary head
+     * is a relation, not a constant).
+     */
+    private BoolExpr hornClause(BoolExpr body, BoolExpr head) {
+        BoolExpr clause = context.mkImplies(body, head);
+        Expr<?>[] args  = head.getArgs();
+        Expr<?>[] roots = Arrays.copyOf(args, args.length + 1);
+        roots[args.length] = body;
+
+        Expr<?>[] vars  = freeConstants(roots);
+
+        if (vars.length == 0) {
+            return clause;
+        }
+
+        return context.mkForall(vars, clause, 1, null, null, null, null);
+    }
+
+    /**
+     * This method tries to exactly solve the problem for any number
+     * of steps by encoding the transition system as constrained Horn
+     * clauses solved by Spacer:
+     *
+     *   init(s)                   => reach(s)
+     *   reach(s) /\ trans(s, s') => reach(s')
+     *   reach(s) /\ final(s)     => error
      *
-     * 1. push and pop cannot be used, therefore the complete set of
-     *    formulas has to be built at each iteration
-     * 2. the negation of the expected property has to be added for
-     *    the next step
-     * 3. the problem should therefore be SAT at each iteration. If not,
-     *    return the corresponding status (UNSAT or UNKNOWN). If the
-     *    problem is SAT at each step, return SAT.
+     * The query error is UNSAT iff the final state is unreachable,
+     * which is shown by an inductive invariant over-approximating
+     * reach (cf. {@link #getInvariant()}, printed if verbose) instead
+     * of enumerating depths.
      *
-     * @param timeout the timeout to use. If negative, no timeout is used
+     * @param deadline the deadline of the resolution
      */
-    private Status solveApprox(int timeout) {
-        Optimize opt = context.mkOptimize();
+    private Status solveHorn(Deadline deadline) {
+        Expr<?>[] vars = system.hornStateVars(0);
 
-        if (timeout >= 0) {
-            Params p = context.mkParams();
-            p.add("timeout", timeout);
-            opt.setParameters(p);
+        if (vars == null || simulation) {
+            throw new Error("the transition system cannot be solved by " +
+                            Engine.SPACER);
         }
 
-        opt.Add(system.initialStateFormula());
+        Expr<?>[] nextVars = system.hornStateVars(1);
 
-        for (int step = 0; step < maxNOfSteps; step++) {
-            opt.Add(system.transitionFormula(step));
+        Sort[] sorts = new Sort[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            sorts[i] = vars[i].getSort();
         }
 
-        BitVecExpr errorBv = ((ChiffresTransitionSystem) system).finalStateApproxCriterion(maxNOfSteps);
-        IntExpr errorInt = context.mkBV2Int(errorBv, true);
-        
-        opt.MkMinimize(errorInt);
+        FuncDecl<BoolSort> reach = context.mkFuncDecl("reach", sorts, context.getBoolSort());
+        FuncDecl<BoolSort> error = context.mkFuncDecl("error", new Sort[0], context.getBoolSort());
 
-        Status status = opt.Check();
+        BoolExpr reachNow  = (BoolExpr) reach.apply(vars);
+        BoolExpr reachNext = (BoolExpr) reach.apply(nextVars);
+        BoolExpr isError   = (BoolExpr) error.apply();
 
-        if (status == Status.SATISFIABLE) {
-            System.out.println("Approximate solution found:");
-            system.printModel(opt.getModel(), maxNOfSteps);
-            return Status.SATISFIABLE;
-        } else if (status == Status.UNKNOWN) {
-            System.out.println("Approximate solution status UNKNOWN");
+        Fixedpoint fp = context.mkFixedpoint();
+
+        Params p = context.mkParams();
+        p.add("engine", "spacer");
+        // interpolating unsat cores crash Spacer on some instances
+        p.add("spacer.use_iuc", false);
+        if (this.randomSeed >= 0) {
+            p.add("spacer.random_seed", this.randomSeed);
+        }
+        if (!deadline.isUnbounded()) {
+            p.add("timeout", deadline.z3Timeout());
+        }
+        fp.setParameters(p);
+
+        fp.registerRelation(reach);
+        fp.registerRelation(error);
+
+        fp.addRule(hornClause(system.hornInitialStateFormula(), reachNow),
+                   context.mkSymbol("init"));
+        BoolExpr[] transitions = system.hornTransitionFormulas(0);
+
+        for (int i = 0; i < transitions.length; i++) {
+            fp.addRule(hornClause(context.mkAnd(reachNow, transitions[i]), reachNext),
+                       context.mkSymbol("trans" + i));
+        }
+        fp.addRule(hornClause(context.mkAnd(reachNow, system.finalStateFormula(0)),
+                              isError),
+                   context.mkSymbol("final"));
+
+        if (interrupted || deadline.expired()) {
             return Status.UNKNOWN;
         }
 
-        System.out.println("UNSATISFIABLE after all steps");
-        return Status.UNSATISFIABLE;
+        Status res;
+
+        try {
+            res = fp.query(isError);
+        } catch (Z3Exception e) {
+            if (interrupted || deadline.expired()) {
+                return Status.UNKNOWN;
+            }
+
+            throw e;
+        }
+
+        if (res == Status.UNSATISFIABLE) {
+            this.invariant = fp.getAnswer();
+        }
+
+        if (verbose) {
+            System.out.println("" + res + " with " + Engine.SPACER);
+
+            if (res == Status.UNSATISFIABLE) {
+                System.out.println("Inductive invariant: " + this.invariant);
+            } else if (res == Status.UNKNOWN) {
+                System.out.println("Reason: " + fp.getReasonUnknown());
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * This method approximatively solves the BMC problem as an anytime
+     * search for the state closest to the expected property (cf.
+     * {@link TransitionSystem#finalStateApproxCriterion(int)}).
+     *
+     * The transition relation is unrolled once in an incremental
+     * solver: transition k is guarded by a literal active@k and a
+     * candidate state at step k (cf.
+     * {@link TransitionSystem#finalStateApproxFormula(int)}) by a
+     * literal final@k setting the error to its criterion. Each time a
+     * solution is found, it is published to the listener (cf.
+     * {@link #setApproxListener(ApproxListener)}) and the bit vector
+     * bound error &lt; best is added before the next check, until the
+     * error is 0 or no better solution exists.
+     *
+     * Returns SAT with the best solution found (as the model of the
+     * resolution) if any, even if the deadline expired, UNSAT if there
+     * is no candidate state and UNKNOWN otherwise.
+     *
+     * @param deadline the deadline of the resolution
+     */
+    private Status solveApprox(Deadline deadline) {
+        Solver solver = this.profile.mkSolver(this.context);
+        this.configure(solver);
+
+        solver.add(system.initialStateFormula());
+
+        BoolExpr[] active = new BoolExpr[maxNOfSteps];
+        BoolExpr[] finals = new BoolExpr[maxNOfSteps + 1];
+        ArrayList<BoolExpr> anyFinal = new ArrayList<>();
+        BitVecExpr error = null;
+
+        for (int step = 0; step <= maxNOfSteps; step++) {
+            BitVecExpr criterion = system.isFinalStateReachable(step) ?
+                system.finalStateApproxCriterion(step) : null;
+
+            if (criterion != null) {
+                if (error == null) {
+                    error = context.mkBVConst("error", criterion.getSortSize());
+                }
+
+                finals[step] = context.mkBoolConst("final@" + step);
+
+                BoolExpr candidate = context.mkAnd(system.finalStateApproxFormula(step),
+                                                   context.mkEq(error, criterion));
+
+                if (step > 0) {
+                    candidate = context.mkAnd(candidate, active[step - 1]);
+                }
+
+                solver.add(context.mkImplies(finals[step], candidate));
+                anyFinal.add(finals[step]);
+            }
+
+            if (step < maxNOfSteps) {
+                active[step] = context.mkBoolConst("active@" + step);
+                solver.add(context.mkImplies(active[step], system.transitionFormula(step)));
+
+                if (step > 0) {
+                    solver.add(context.mkImplies(active[step], active[step - 1]));
+                }
+            }
+        }
+
+        if (error == null) {
+            throw new Error("the transition system has no approximate resolution");
+        }
+
+        solver.add(context.mkOr(anyFinal.toArray(new BoolExpr[0])));
+
+        Status status;
+
+        while (!interrupted && !deadline.expired()) {
+            this.setTimeout(solver, deadline);
+
+            status = solver.check();
+
+            if (status != Status.SATISFIABLE) {
+                if (verbose) {
+                    System.out.println(status == Status.UNSATISFIABLE && this.model != null ?
+                                       "Approximate solution is optimal" :
+                                       "Approximate solution status " + status);
+                }
+
+                if (status == Status.UNSATISFIABLE && this.model == null) {
+                    return Status.UNSATISFIABLE;
+                }
+
+                break;
+            }
+
+            Model m = solver.getModel();
+            long best = ((BitVecNum) m.eval(error, true)).getLong();
+            int steps = 0;
+
+            while (finals[steps] == null || !m.eval(finals[steps], true).isTrue()) {
+                steps++;
+            }
+
+            this.model      = m;
+            this.modelSteps = steps;
+
+            if (verbose) {
+                System.out.println("Approximate solution at distance " + best +
+                                   " found at step " + steps + ":");
+                system.printModel(m, steps);
+            }
+
+            if (this.approxListener != null) {
+                this.approxListener.improved(m, steps, best);
+            }
+
+            if (best == 0) {
+                break;
+            }
+
+            solver.add(context.mkBVULT(error, context.mkBV(best, error.getSortSize())));
+        }
+
+        return this.model != null ? Status.SATISFIABLE : Status.UNKNOWN;
+    }
+
+    /**
+     * Tries to solve the BMC problem as {@link #solve(int)} and
+     * returns the result decoded by the transition system (cf.
+     * {@link TransitionSystem#decode}), so that the caller does not
+     * need the model nor the context afterwards.
+     *
+     * @param timeout the timeout to use in milliseconds. If negative,
+     *        no timeout is used
+     */
+    public Solution findSolution(int timeout) {
+        return this.findSolution(Deadline.in(timeout));
+    }
+
+    /**
+     * Tries to solve the BMC problem before deadline as
+     * {@link #solve(Deadline)} and returns the decoded result.
+     *
+     * @param deadline the deadline of the resolution
+     */
+    public Solution findSolution(Deadline deadline) {
+        Status s = this.solve(deadline);
+
+        if (this.model != null && !this.simulation) {
+            Solution solution = system.decode(this.model, this.modelSteps);
+
+            if (solution != null) {
+                return solution;
+            }
+        }
+
+        return new Solution(s);
     }
 
     /**
      * Tries to solve the BMC problem using exact resolution and
      * approximate resolution if asked.
      *
-     * @param timeout the timeout to use. If negative, no timeout is used
+     * @param timeout the timeout to use in milliseconds. If negative,
+     *        no timeout is used
      */
     public Status solve(int timeout) {
-        this.printParams();
+        return this.solve(Deadline.in(timeout));
+    }
 
-        Status s = this.solveExact(timeout);
+    /**
+     * Tries to solve the BMC problem using exact resolution (with
+     * the engine set by {@link #setEngine(Engine)}) and approximate
+     * resolution if asked, both sharing the same deadline. The
+     * context is interrupted if the deadline expires during a check.
+     *
+     * With {@link Engine#SPACER}, a SAT answer is followed by an
+     * unrolling that finds the model of a solution: SAT is only
+     * returned with a model (UNKNOWN if the unrolling does not end
+     * before deadline).
+     *
+     * @param deadline the deadline of the resolution
+     */
+    public Status solve(Deadline deadline) {
+        if (verbose) {
+            this.printParams();
+        }
 
-        if (this.useApprox && s != Status.SATISFIABLE) {
-            s = this.solveApprox(timeout);
+        this.model     = null;
+        this.invariant = null;
+
+        synchronized (this) {
+            this.solving = true;
         }
 
-        return s;
+        Deadline.Watch watch = deadline.watch(this::interruptCheck);
+
+        try {
+            Status s;
+
+            if (this.engine == Engine.SPACER && !this.simulation) {
+                s = this.solveHorn(deadline);
+
+                // the trace of a solution is found by unrolling
+                if (s == Status.SATISFIABLE) {
+                    s = this.solveExact(deadline);
+                }
+            } else {
+                s = this.solveExact(deadline);
+            }
+
+            if (this.useApprox && s != Status.SATISFIABLE) {
+                s = this.solveApprox(deadline);
+            }
+
+            return s;
+        } finally {
+            watch.close();
+
+            synchronized (this) {
+                this.solving = false;
+            }
+        }
     }
 }
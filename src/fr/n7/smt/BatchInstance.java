@@ -0,0 +1,225 @@
+package fr.n7.smt;
+
+import java.util.ArrayList;
+
+/**
+ * A "Countdown" problem read by {@link MainBatch}, from a CSV line
+ *
+ *   target,bvBits,noOverflows,num1,num2,...
+ *
+ * or from a JSON object on one line
+ *
+ *   {"id": "p1", "nums": [8, 10, 2], "target": 899, "bvBits": 16, "noOverflows": true}
+ *
+ * where id is optional (the line number is used instead) and
+ * bvBits and noOverflows default to 16 and true.
+ */
+final class BatchInstance {
+
+    final String  id;
+    final int[]   nums;
+    final int     target;
+    final int     bvBits;
+    final boolean noOverflows;
+
+    private BatchInstance(String id, int[] nums, int target, int bvBits,
+                          boolean noOverflows) {
+        if (bvBits < 1) {
+            throw new IllegalArgumentException("bvBits must be positive");
+        }
+
+        this.id          = id;
+        this.nums        = nums;
+        this.target      = target;
+        this.bvBits      = bvBits;
+        this.noOverflows = noOverflows;
+    }
+
+    /**
+     * Parses a line, returns null for blank lines, comments (starting
+     * with #) and CSV headers.
+     *
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    static BatchInstance parse(String line, int lineNumber) {
+        String l = line.trim();
+
+        if (l.isEmpty() || l.startsWith("#")) {
+            return null;
+        }
+
+        if (l.startsWith("{")) {
+            return parseJson(l, String.valueOf(lineNumber));
+        }
+
+        return parseCsv(l, String.valueOf(lineNumber));
+    }
+
+    private static BatchInstance parseCsv(String line, String id) {
+        String[] fields = line.split(",");
+
+        if (!fields[0].trim().matches("-?[0-9]+")) {
+            return null; // header
+        }
+
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("expected target,bvBits,noOverflows,nums...");
+        }
+
+        int[] nums = new int[fields.length - 3];
+        for (int i = 0; i < nums.length; i++) {
+            nums[i] = Integer.parseInt(fields[i + 3].trim());
+        }
+
+        return new BatchInstance(id, nums, Integer.parseInt(fields[0].trim()),
+                                 Integer.parseInt(fields[1].trim()),
+                                 parseBoolean(fields[2].trim()));
+    }
+
+    private static boolean parseBoolean(String s) {
+        if (s.equals("true") || s.equals("1")) {
+            return true;
+        }
+
+        if (s.equals("false") || s.equals("0")) {
+            return false;
+        }
+
+        throw new IllegalArgumentException("not a boolean: " + s);
+    }
+
+    /**
+     * A minimal scanner for flat JSON objects whose values are
+     * strings, integers, booleans or arrays of integers.
+     */
+    private static final class Scanner {
+        private final String s;
+        private int          pos = 0;
+
+        Scanner(String s) {
+            this.s = s;
+        }
+
+        private void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean accept(char c) {
+            skipSpaces();
+
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+
+            return false;
+        }
+
+        void expect(char c) {
+            if (!accept(c)) {
+                throw new IllegalArgumentException("expected '" + c + "' at " + pos);
+            }
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+
+            while (pos < s.length() && s.charAt(pos) != '"') {
+                char c = s.charAt(pos++);
+
+                if (c == '\\' && pos < s.length()) {
+                    c = s.charAt(pos++);
+                }
+
+                sb.append(c);
+            }
+
+            expect('"');
+
+            return sb.toString();
+        }
+
+        /**
+         * The next scalar value as text (a string is unquoted).
+         */
+        String scalar() {
+            skipSpaces();
+
+            if (pos < s.length() && s.charAt(pos) == '"') {
+                return string();
+            }
+
+            int start = pos;
+            while (pos < s.length() && ",}] \t".indexOf(s.charAt(pos)) < 0) {
+                pos++;
+            }
+
+            return s.substring(start, pos);
+        }
+
+        int[] intArray() {
+            expect('[');
+            ArrayList<Integer> values = new ArrayList<>();
+
+            if (!accept(']')) {
+                do {
+                    values.add(Integer.parseInt(scalar()));
+                } while (accept(','));
+
+                expect(']');
+            }
+
+            return values.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private static BatchInstance parseJson(String line, String defaultId) {
+        Scanner sc = new Scanner(line);
+
+        String  id          = defaultId;
+        int[]   nums        = null;
+        Integer target      = null;
+        int     bvBits      = 16;
+        boolean noOverflows = true;
+
+        sc.expect('{');
+
+        if (!sc.accept('}')) {
+            do {
+                String key = sc.string();
+                sc.expect(':');
+
+                switch (key) {
+                case "id":
+                    id = sc.scalar();
+                    break;
+                case "nums":
+                    nums = sc.intArray();
+                    break;
+                case "target":
+                    target = Integer.parseInt(sc.scalar());
+                    break;
+                case "bvBits":
+                    bvBits = Integer.parseInt(sc.scalar());
+                    break;
+                case "noOverflows":
+                    noOverflows = parseBoolean(sc.scalar());
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown key " + key);
+                }
+            } while (sc.accept(','));
+
+            sc.expect('}');
+        }
+
+        if (nums == null || target == null) {
+            throw new IllegalArgumentException("nums and target are mandatory");
+        }
+
+        return new BatchInstance(id, nums, target, bvBits, noOverflows);
+    }
+}
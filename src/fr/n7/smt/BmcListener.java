@@ -0,0 +1,15 @@
+package fr.n7.smt;
+
+/**
+ * A listener notified by the exact resolution of {@link BMC} after
+ * each check (cf. {@link BMC#setListener(BmcListener)}). Steps at
+ * which the final state is statically unreachable are not checked:
+ * their transitions are accounted to the next checked step.
+ */
+public interface BmcListener {
+
+    /**
+     * Called after the check of a step, on the thread solving.
+     */
+    void stepChecked(StepMetrics metrics);
+}
@@ -0,0 +1,56 @@
+package fr.n7.smt;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The JFR event committed by the exact resolution of {@link BMC} for
+ * each checked step, with the fields of {@link StepMetrics}. The
+ * event lasts from the construction of the final state formula of
+ * the step to the end of its check. Record it with e.g.
+ *
+ *   java -XX:StartFlightRecording=filename=bmc.jfr ...
+ *   jfr print --events fr.n7.smt.BmcStep bmc.jfr
+ */
+@Name("fr.n7.smt.BmcStep")
+@Label("BMC Step")
+@Category({"SMT", "BMC"})
+@Description("A step checked by the exact BMC resolution")
+class BmcStepEvent extends Event {
+
+    @Label("Step")
+    int step;
+
+    @Label("Status")
+    String status;
+
+    @Label("Build Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long buildTime;
+
+    @Label("Check Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long checkTime;
+
+    @Label("Model Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long modelTime;
+
+    @Label("Transition Nodes")
+    int transitionNodes;
+
+    @Label("Conflicts")
+    long conflicts;
+
+    @Label("Decisions")
+    long decisions;
+
+    @Label("Z3 Memory")
+    @DataAmount(DataAmount.BYTES)
+    long memory;
+}
@@ -0,0 +1,34 @@
+package fr.n7.smt;
+
+/**
+ * The encodings available to express "at most one" and "exactly one"
+ * cardinality constraints over Z3 boolean expressions, see
+ * {@link Z3Utils#atMostOne(com.microsoft.z3.Context, CardinalityEncoding,
+ * com.microsoft.z3.BoolExpr...)}.
+ */
+public enum CardinalityEncoding {
+    /**
+     * For each literal, the literal implies that the disjunction of
+     * all other literals is false. Quadratic in the number of
+     * literals, no auxiliary variable.
+     */
+    PAIRWISE,
+
+    /**
+     * Sinz's sequential counter: n - 1 auxiliary variables and
+     * 3n - 4 binary clauses.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Bimander encoding: literals are split into groups of two,
+     * literals inside a group are pairwise exclusive and each group is
+     * identified by a binary code over log2(n/2) auxiliary variables.
+     */
+    BIMANDER,
+
+    /**
+     * Z3 native pseudo-boolean constraints (mkAtMost and mkPBEq).
+     */
+    PSEUDO_BOOLEAN
+}
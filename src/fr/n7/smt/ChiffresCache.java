@@ -1,102 +1,185 @@
 package fr.n7.smt;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 import com.microsoft.z3.*;
 
+/**
+ * Cache of the variables of a {@link ChiffresTransitionSystem}.
+ *
+ * Variables are stored in arrays indexed by step (and by action,
+ * numeral or slot), sized for the maximum number of steps and grown
+ * if a deeper step is asked. Sorts are created once and the name of
+ * a variable is only built when the variable is created, so that
+ * getting a cached variable allocates nothing.
+ */
 class ChiffresCache {
     // Z3 context
-    private Context context = Z3Utils.getZ3Context();
+    private Context context;
 
-    // bit vectors size
-    private int bvBits;
+    // sorts of the variables
+    private BoolSort    boolSort;
+    private IntSort     intSort;
+    private BitVecSort  bvSort;
+    private BitVecSort  idxBvSort;
+    private BitVecSort  usedSort;
 
-    // booleans constants cache. They are indexed by their names
-    private HashMap<String, BoolExpr> boolCache = new HashMap<>();
+    // starting numerals and the index of the first numeral equal to
+    // each one: equal numerals share their pushNumVar variables
+    private int[] nums;
+    private int[] numClass;
 
-    // bits vectors constants cache. They are indexed by their names
-    private HashMap<String, BitVecExpr> bvCache = new HashMap<>();
+    // number of steps the arrays can hold
+    private int capacity;
 
-    // integer constants cache. They are indexed by their names
-    private HashMap<String, IntExpr> intCache = new HashMap<>();
+    // action variables indexed by step and DIV, SUB, ADD, MUL
+    private BoolExpr[][] opVars;
 
-    // arrays constants cache. They are indexed by their names
-    private HashMap<String, ArrayExpr<IntSort, BitVecSort>> arrayCache = new HashMap<>();
+    // push variables indexed by step and numeral index
+    private BoolExpr[][] pushNumVars;
+    private BoolExpr[][] pushIdxVars;
+
+    // state variables indexed by step (and slot for registers)
+    private ArrayExpr<IntSort, BitVecSort>[] stackVars;
+    private IntExpr[]                        idxVars;
+    private BitVecExpr[][]                   registerVars;
+    private BitVecExpr[]                     idxBvVars;
+    private BitVecExpr[]                     usedVars;
+
+    // quotients of the exact division indexed by step
+    private BitVecExpr[]                     quotientVars;
+
+    private static final String[] OP_NAMES = {"div", "sub", "add", "mul"};
 
     /**
      * Create new cache.
      *
+     * @param context the Z3 context in which constants are created
      * @param bvBits the number of bits of bit vectors
+     * @param nums the starting numerals
+     * @param maxNofSteps the maximum number of steps, the arrays
+     *        are sized for the states of steps 0 to maxNofSteps
      */
-    ChiffresCache(int bvBits) {
-        this.bvBits = bvBits;
-    }
+    @SuppressWarnings("unchecked")
+    ChiffresCache(Context context, int bvBits, int[] nums, int maxNofSteps) {
+        this.context  = context;
+        this.nums     = nums;
+        this.boolSort = context.getBoolSort();
+        this.intSort  = context.getIntSort();
+        this.bvSort   = context.mkBitVecSort(bvBits);
 
-    /**
-     * Returns boolean cache constant if present or create it.
-     */
-    private BoolExpr boolConst(String name) {
-        BoolExpr res = boolCache.get(name);
+        this.numClass = new int[nums.length];
+        for (int i = 0; i < nums.length; i++) {
+            numClass[i] = i;
 
-        if (res == null) {
-            res = Z3Utils.getZ3Context().mkBoolConst(name);
-            boolCache.put(name, res);
+            for (int j = 0; j < i; j++) {
+                if (nums[j] == nums[i]) {
+                    numClass[i] = j;
+                    break;
+                }
+            }
         }
 
-        return res;
+        this.capacity     = maxNofSteps + 1;
+        this.opVars       = new BoolExpr[capacity][];
+        this.pushNumVars  = new BoolExpr[capacity][];
+        this.pushIdxVars  = new BoolExpr[capacity][];
+        this.stackVars    = (ArrayExpr<IntSort, BitVecSort>[]) new ArrayExpr<?, ?>[capacity];
+        this.idxVars      = new IntExpr[capacity];
+        this.registerVars = new BitVecExpr[capacity][];
+        this.idxBvVars    = new BitVecExpr[capacity];
+        this.usedVars     = new BitVecExpr[capacity];
+        this.quotientVars = new BitVecExpr[capacity];
     }
 
     /**
-     * Returns bit vector cache constant if present or create it.
+     * Grows the arrays so that they hold step.
      */
-    private BitVecExpr bvConst(String name) {
-        BitVecExpr res = bvCache.get(name);
-
-        if (res == null) {
-            res = context.mkBVConst(name, this.bvBits);
-            bvCache.put(name, res);
+    private void ensureCapacity(int step) {
+        if (step < capacity) {
+            return;
         }
 
-        return res;
+        capacity     = Math.max(step + 1, 2 * capacity);
+        opVars       = Arrays.copyOf(opVars, capacity);
+        pushNumVars  = Arrays.copyOf(pushNumVars, capacity);
+        pushIdxVars  = Arrays.copyOf(pushIdxVars, capacity);
+        stackVars    = Arrays.copyOf(stackVars, capacity);
+        idxVars      = Arrays.copyOf(idxVars, capacity);
+        registerVars = Arrays.copyOf(registerVars, capacity);
+        idxBvVars    = Arrays.copyOf(idxBvVars, capacity);
+        usedVars     = Arrays.copyOf(usedVars, capacity);
+        quotientVars = Arrays.copyOf(quotientVars, capacity);
+    }
+
+    private BoolExpr boolConst(String name) {
+        return (BoolExpr) context.mkConst(name, boolSort);
+    }
+
+    private BitVecExpr bvConst(String name, BitVecSort sort) {
+        return (BitVecExpr) context.mkConst(name, sort);
     }
 
     /**
-     * Returns integer cache constant if present or create it.
+     * Decision variable corresponding to the action op (one of
+     * DIV, SUB, ADD and MUL of {@link ChiffresTransitionSystem}) at a
+     * given step.
      */
-    private IntExpr intConst(String name) {
-        IntExpr res = intCache.get(name);
+    private BoolExpr opVar(int step, int op) {
+        ensureCapacity(step);
+        BoolExpr[] vars = opVars[step];
 
-        if (res == null) {
-            res = context.mkIntConst(name);
-            intCache.put(name, res);
+        if (vars == null) {
+            vars = opVars[step] = new BoolExpr[OP_NAMES.length];
         }
 
-        return res;
+        if (vars[op] == null) {
+            vars[op] = boolConst(OP_NAMES[op] + "@" + step);
+        }
+
+        return vars[op];
     }
 
     /**
-     * Returns array cache constant if present or create it.
+     * Decision variable corresponding to the action "push a numeral on the stack"
+     * at a given step. Equal numerals share their variable.
+     *
+     * @param i the index of the numeral in the starting numerals
      */
-    private ArrayExpr<IntSort, BitVecSort> arrayConst(String name) {
-        ArrayExpr<IntSort, BitVecSort> res = arrayCache.get(name);
-
-        if (res == null) {
-            res = context.mkArrayConst(name,
-                                       context.getIntSort(),
-                                       context.mkBitVecSort(this.bvBits));
-            arrayCache.put(name, res);
+    BoolExpr pushNumVar(int step, int i) {
+        ensureCapacity(step);
+        BoolExpr[] vars = pushNumVars[step];
+        int c = numClass[i];
+
+        if (vars == null) {
+            vars = pushNumVars[step] = new BoolExpr[nums.length];
+        }
+
+        if (vars[c] == null) {
+            vars[c] = boolConst("push_" + nums[c] + "@" + step);
         }
 
-        return res;
+        return vars[c];
     }
 
     /**
-     * Decision variable corresponding to the action "push a numeral on the stack"
-     * at a given step.
+     * Decision variable corresponding to the action "push the i-th
+     * starting numeral on the stack" at a given step. Contrary to
+     * pushNumVar, equal numerals get distinct variables.
      */
-    BoolExpr pushNumVar(int step, int num) {
-        return boolConst("push_" + String.valueOf(num) + "@" +
-                         String.valueOf(step));
+    BoolExpr pushIdxVar(int step, int i) {
+        ensureCapacity(step);
+        BoolExpr[] vars = pushIdxVars[step];
+
+        if (vars == null) {
+            vars = pushIdxVars[step] = new BoolExpr[nums.length];
+        }
+
+        if (vars[i] == null) {
+            vars[i] = boolConst("push#" + i + "@" + step);
+        }
+
+        return vars[i];
     }
 
     /**
@@ -104,7 +187,7 @@ class ChiffresCache {
      * on the stack" at a given step.
      */
     BoolExpr addVar(int step) {
-        return boolConst("add@" + String.valueOf(step));
+        return opVar(step, ChiffresTransitionSystem.ADD);
     }
 
     /**
@@ -112,7 +195,7 @@ class ChiffresCache {
      * top elements on the stack" at a given step.
      */
     BoolExpr subVar(int step) {
-        return boolConst("sub@" + String.valueOf(step));
+        return opVar(step, ChiffresTransitionSystem.SUB);
     }
 
     /**
@@ -120,7 +203,7 @@ class ChiffresCache {
      * the two top elements on the stack" at a given step.
      */
     BoolExpr mulVar(int step) {
-        return boolConst("mul@" + String.valueOf(step));
+        return opVar(step, ChiffresTransitionSystem.MUL);
     }
 
     /**
@@ -128,14 +211,20 @@ class ChiffresCache {
      * two top elements of the stack" at a given step.
      */
     BoolExpr divVar(int step) {
-        return boolConst("div@" + String.valueOf(step));
+        return opVar(step, ChiffresTransitionSystem.DIV);
     }
 
     /**
      * State variable representing the stack at a given step.
      */
     ArrayExpr<IntSort, BitVecSort> stackStateVar(int step) {
-        return arrayConst("stack@" + String.valueOf(step));
+        ensureCapacity(step);
+
+        if (stackVars[step] == null) {
+            stackVars[step] = context.mkArrayConst("stack@" + step, intSort, bvSort);
+        }
+
+        return stackVars[step];
     }
 
     /**
@@ -143,6 +232,83 @@ class ChiffresCache {
      * step.
      */
     IntExpr idxStateVar(int step) {
-        return intConst("idx@" + String.valueOf(step));
+        ensureCapacity(step);
+
+        if (idxVars[step] == null) {
+            idxVars[step] = (IntExpr) context.mkConst("idx@" + step, intSort);
+        }
+
+        return idxVars[step];
+    }
+
+    /**
+     * State variable representing a stack slot at a given step when
+     * the stack is encoded with registers.
+     */
+    BitVecExpr registerStateVar(int step, int slot) {
+        ensureCapacity(step);
+        BitVecExpr[] vars = registerVars[step];
+
+        if (vars == null || slot >= vars.length) {
+            vars = Arrays.copyOf(vars == null ? new BitVecExpr[0] : vars,
+                                 Math.max(slot + 1, nums.length));
+            registerVars[step] = vars;
+        }
+
+        if (vars[slot] == null) {
+            vars[slot] = bvConst("reg_" + slot + "@" + step, bvSort);
+        }
+
+        return vars[slot];
+    }
+
+    /**
+     * State variable representing the top stack index at a given
+     * step when the stack is encoded with registers.
+     */
+    BitVecExpr idxBvStateVar(int step, int bits) {
+        ensureCapacity(step);
+
+        if (idxBvVars[step] == null) {
+            if (idxBvSort == null) {
+                idxBvSort = context.mkBitVecSort(bits);
+            }
+
+            idxBvVars[step] = bvConst("idxbv@" + step, idxBvSort);
+        }
+
+        return idxBvVars[step];
+    }
+
+    /**
+     * State variable representing the set of starting numerals
+     * already pushed at a given step, one bit per numeral.
+     */
+    BitVecExpr usedStateVar(int step, int bits) {
+        ensureCapacity(step);
+
+        if (usedVars[step] == null) {
+            if (usedSort == null) {
+                usedSort = context.mkBitVecSort(bits);
+            }
+
+            usedVars[step] = bvConst("used@" + step, usedSort);
+        }
+
+        return usedVars[step];
+    }
+
+    /**
+     * Variable representing the quotient of the division at a given
+     * step when divisions are encoded as exact multiplications.
+     */
+    BitVecExpr quotientVar(int step) {
+        ensureCapacity(step);
+
+        if (quotientVars[step] == null) {
+            quotientVars[step] = bvConst("quot@" + step, bvSort);
+        }
+
+        return quotientVars[step];
     }
 }
@@ -0,0 +1,64 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.*;
+
+/**
+ * The stack state of {@link ChiffresTransitionSystem} at each step.
+ * Positions are counted from the top: the element at depth 1 is the
+ * top of the stack, the element at depth 2 is just below.
+ */
+interface ChiffresStack {
+
+    /**
+     * A formula true iff the stack at step contains size elements.
+     */
+    BoolExpr sizeIs(int step, int size);
+
+    /**
+     * A formula true iff the stack at step contains at least size
+     * elements.
+     */
+    BoolExpr sizeAtLeast(int step, int size);
+
+    /**
+     * The element at depth from the top of the stack at step.
+     */
+    BitVecExpr top(int step, int depth);
+
+    /**
+     * The first element pushed on the stack at step.
+     */
+    BitVecExpr bottom(int step);
+
+    /**
+     * A formula true iff the stack at step + 1 is the stack at step
+     * with value pushed on it.
+     */
+    BoolExpr pushFormula(int step, BitVecExpr value);
+
+    /**
+     * A formula true iff the stack at step + 1 is the stack at step
+     * with its two top elements replaced by value.
+     */
+    BoolExpr reduceFormula(int step, BitVecExpr value);
+
+    /**
+     * The state variables representing the stack at step.
+     */
+    Expr<?>[] stateVars(int step);
+
+    /**
+     * The number of slots of the stack that can be printed.
+     */
+    int nOfSlots();
+
+    /**
+     * The element in slot (counted from the bottom) at step.
+     */
+    BitVecExpr slot(int step, int slot);
+
+    /**
+     * The size of the stack at step in model m.
+     */
+    int sizeIn(Model m, int step);
+}
@@ -1,7 +1,9 @@
 package fr.n7.smt;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import com.microsoft.z3.*;
 
@@ -15,21 +17,44 @@ import com.microsoft.z3.*;
  */
 public class ChiffresTransitionSystem extends TransitionSystem {
 
-    private Context       context;
     private ChiffresCache cache;
+    private StackEncoding stackEncoding;
+    private ChiffresStack stack;
     private int           bvBits;
     private int[]         nums;
     private int           target;
     private int           maxNofSteps;
     private boolean       noOverflows;
+    private boolean       symmetryBreaking = false;
+    private boolean       usedMask         = false;
+
+    private DivisionEncoding divisionEncoding = DivisionEncoding.SDIV;
+
+    // action numbers, pushes are numbered from PUSH
+    static final int DIV  = 0;
+    static final int SUB  = 1;
+    static final int ADD  = 2;
+    static final int MUL  = 3;
+    static final int PUSH = 4;
+
+    // indices in nums of the numerals having a push action
+    private int[]         pushActions;
 
     // minmum and maximum values for bitvectors
     private BigInteger    maxBvRange;
     private BigInteger    minBvRange;
 
-    private BitVecNum toBvNum(int num) {
+    // numerals of nums, of the target and of 0, created on first use
+    private BitVecNum[]   bvNums;
+    private BitVecNum     bvTarget;
+    private BitVecNum     bvZero;
+
+    /**
+     * The bit vector of the numeral num.
+     */
+    BitVecNum toBvNum(int num) {
         if (noOverflows) {
-            BigInteger bigNum = new BigInteger(String.valueOf(num));
+            BigInteger bigNum = BigInteger.valueOf(num);
 
             if (bigNum.compareTo(minBvRange) >= 0 && bigNum.compareTo(maxBvRange) <= 0)
                 return context.mkBV(num, bvBits);
@@ -42,21 +67,62 @@ public class ChiffresTransitionSystem extends TransitionSystem {
         }
     }
 
+    /**
+     * The bit vector of nums[i].
+     */
+    private BitVecNum bvNum(int i) {
+        if (bvNums[i] == null) {
+            bvNums[i] = this.toBvNum(nums[i]);
+        }
+
+        return bvNums[i];
+    }
+
+    /**
+     * The bit vector of the target.
+     */
+    private BitVecNum bvTarget() {
+        if (bvTarget == null) {
+            bvTarget = this.toBvNum(target);
+        }
+
+        return bvTarget;
+    }
+
+    /**
+     * The bit vector of 0.
+     */
+    private BitVecNum bvZero() {
+        if (bvZero == null) {
+            bvZero = this.toBvNum(0);
+        }
+
+        return bvZero;
+    }
+
     /**
      * Creates a new Chiffres transition system
      *
+     * @param context the Z3 context in which formulas are built
      * @param nums an array with the starting integers
      * @param target the target integer
      * @param bvBits the number of bits in bitvectors
      * @param noOverflows a boolean that is true if you do not want
-     *        overflows with bitvectors
+     *        overflows with bitvectors: the numerals must then be
+     *        signed values on bvBits bits and each operation is
+     *        guarded by the no overflow predicates of Z3, so that no
+     *        result wraps around
      */
-    public ChiffresTransitionSystem(int[] nums, int target, int bvBits, boolean noOverflows) {
-        this.context     = Z3Utils.getZ3Context();
-        this.cache       = new ChiffresCache(bvBits);
+    public ChiffresTransitionSystem(Context context, int[] nums, int target,
+                                    int bvBits, boolean noOverflows) {
+        super(context);
+
+        this.cache       = new ChiffresCache(context, bvBits, nums,
+                                         Math.max(2*nums.length - 1, 0));
         this.nums        = nums;
         this.target      = target;
         this.bvBits      = bvBits;
+        this.bvNums      = new BitVecNum[nums.length];
         this.maxBvRange  = new BigInteger("2").pow(bvBits-1).subtract(new BigInteger("1"));
         this.minBvRange  = new BigInteger("2").pow(bvBits-1).negate();
 
@@ -64,6 +130,172 @@ public class ChiffresTransitionSystem extends TransitionSystem {
         this.maxNofSteps = Math.max(2*nums.length - 1,0);
 
         this.noOverflows = noOverflows;
+
+        this.setStackEncoding(StackEncoding.ARRAY);
+        this.setSymmetryBreaking(false);
+    }
+
+    /**
+     * Creates a new Chiffres transition system whose bit vectors are
+     * wide enough to never overflow (cf. {@link #safeBvBits}).
+     *
+     * @param context the Z3 context in which formulas are built
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     * @param noOverflows a boolean that is true if you do not want
+     *        overflows with bitvectors
+     */
+    public ChiffresTransitionSystem(Context context, int[] nums, int target,
+                                    boolean noOverflows) {
+        this(context, nums, target, safeBvBits(nums, target), noOverflows);
+    }
+
+    /**
+     * The smallest number of bits of signed bit vectors holding all
+     * the starting integers and the target, i.e. the narrowest width
+     * accepted by {@link #toBvNum} when noOverflows is true.
+     */
+    public static int minimalBvBits(int[] nums, int target) {
+        int bits = BigInteger.valueOf(target).bitLength() + 1;
+
+        for (int num : nums) {
+            bits = Math.max(bits, BigInteger.valueOf(num).bitLength() + 1);
+        }
+
+        return bits;
+    }
+
+    /**
+     * A number of bits of signed bit vectors holding every value that
+     * can be computed from nums: the absolute value of a result is at
+     * most the product of max(|num|, 2) over the integers it uses.
+     * With this width no operation overflows, so an UNSAT result with
+     * noOverflows is not an artefact of the width.
+     */
+    public static int safeBvBits(int[] nums, int target) {
+        BigInteger bound = BigInteger.ONE;
+
+        for (int num : nums) {
+            bound = bound.multiply(BigInteger.valueOf(Math.max(Math.abs((long) num), 2)));
+        }
+
+        bound = bound.max(BigInteger.valueOf(Math.abs((long) target)));
+
+        return Math.max(bound.bitLength() + 1, minimalBvBits(nums, target));
+    }
+
+    /**
+     * If symmetryBreaking is true, each starting numeral has its own
+     * push variable and symmetric sequences of actions are forbidden:
+     *
+     * - the top operand of add and mul must be greater or equal to
+     *   the other one (the two subexpressions can always be swapped)
+     * - equal numerals must be pushed in the order of their indices
+     *
+     * Otherwise, push variables are shared by equal numerals, which
+     * can then be pushed only once.
+     *
+     * Beware, this changes the answers and not only the resolution
+     * time when numerals repeat: {5, 5} -> 10 is UNSAT without
+     * symmetry breaking and SAT with it. With distinct numerals, both
+     * modes have the same solutions up to the order of operands. Must
+     * be called before building any formula.
+     */
+    public void setSymmetryBreaking(boolean symmetryBreaking) {
+        this.symmetryBreaking = symmetryBreaking;
+        this.updatePushActions();
+    }
+
+    public boolean isSymmetryBreaking() {
+        return this.symmetryBreaking;
+    }
+
+    /**
+     * If usedMask is true, the set of numerals already pushed is
+     * carried from step to step by a bit vector state variable: a
+     * push of nums[i] requires bit i to be clear and sets it. The
+     * uniqueness of a push is then checked in constant size instead
+     * of against the push variables of all previous steps, and each
+     * starting numeral has its own push variable (equal numerals can
+     * each be pushed once). Must be called before building any
+     * formula.
+     */
+    public void setUsedMask(boolean usedMask) {
+        this.usedMask = usedMask;
+        this.updatePushActions();
+    }
+
+    public boolean isUsedMask() {
+        return this.usedMask;
+    }
+
+    private void updatePushActions() {
+        this.pushActions = IntStream.range(0, nums.length)
+            .filter(i -> symmetryBreaking || usedMask || firstIndexOf(nums[i]) == i)
+            .toArray();
+    }
+
+    private int firstIndexOf(int num) {
+        for (int i = 0; i < nums.length; i++) {
+            if (nums[i] == num) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * The last index before i of a numeral equal to nums[i], -1 if
+     * there is none.
+     */
+    private int previousEqualIndex(int i) {
+        for (int j = i - 1; j >= 0; j--) {
+            if (nums[j] == nums[i]) {
+                return j;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Decision variable of the action "push nums[i]" at step.
+     */
+    private BoolExpr pushVar(int step, int i) {
+        return symmetryBreaking || usedMask ? cache.pushIdxVar(step, i)
+                                            : cache.pushNumVar(step, i);
+    }
+
+    /**
+     * Sets the encoding of the stack. Must be called before building
+     * any formula.
+     */
+    public void setStackEncoding(StackEncoding stackEncoding) {
+        this.stackEncoding = stackEncoding;
+
+        if (stackEncoding == StackEncoding.REGISTERS) {
+            this.stack = new RegisterStack(context, cache, nums.length);
+        } else {
+            this.stack = new ArrayStack(context, cache, maxNofSteps + 1);
+        }
+    }
+
+    public StackEncoding getStackEncoding() {
+        return this.stackEncoding;
+    }
+
+    /**
+     * Sets the encoding of the division in transition formulas built
+     * afterwards. With {@link DivisionEncoding#EXACT_MULTIPLICATION},
+     * only exact divisions are allowed.
+     */
+    public void setDivisionEncoding(DivisionEncoding divisionEncoding) {
+        this.divisionEncoding = divisionEncoding;
+    }
+
+    public DivisionEncoding getDivisionEncoding() {
+        return this.divisionEncoding;
     }
 
     /**
@@ -76,47 +308,93 @@ public class ChiffresTransitionSystem extends TransitionSystem {
 
     @Override
     public BoolExpr initialStateFormula() {
-        return context.mkEq(cache.idxStateVar(0), context.mkInt(0));
+        if (usedMask) {
+            return context.mkAnd(stack.sizeIs(0, 0),
+                                 context.mkEq(used(0), context.mkBV(0, usedBits())));
+        }
+
+        return stack.sizeIs(0, 0);
+    }
+
+    /**
+     * Gets the number of bits of bit vectors.
+     */
+    public int getBvBits() {
+        return this.bvBits;
     }
 
     @Override
     public BoolExpr finalStateFormula(int step) {
-        IntExpr idx = cache.idxStateVar(step);
-        BoolExpr hasOneElement = context.mkEq(idx, context.mkInt(1));
+        return finalStateFormula(step, bvTarget());
+    }
 
-        
-        ArrayExpr<IntSort, BitVecSort> stack = cache.stackStateVar(step);
-        BitVecExpr top = (BitVecExpr) context.mkSelect(stack, context.mkInt(0));
-        BitVecNum expected = toBvNum(target);
+    /**
+     * The final state formula at step for another target, e.g. a
+     * symbolic one.
+     */
+    public BoolExpr finalStateFormula(int step, BitVecExpr expected) {
+        BoolExpr hasOneElement = stack.sizeIs(step, 1);
+
+        BitVecExpr top = stack.bottom(step);
         BoolExpr topIsExpected = context.mkEq(top, expected);
 
         return context.mkAnd(hasOneElement,topIsExpected);
     }
 
     /**
-     * A boolean formula that should be true iff states at step and
-     * step + 1 are linked by a "push(num)" action.
+     * An approximate solution is a stack with one element.
      */
-    private BoolExpr pushNumFormula(int step, int num) {        
-        IntExpr idx = cache.idxStateVar(step);
-        IntExpr nextIdx = cache.idxStateVar(step+1);
+    @Override
+    public BoolExpr finalStateApproxFormula(int step) {
+        return stack.sizeIs(step, 1);
+    }
 
-        BoolExpr wellIncrementedIndex = context.mkEq(nextIdx, context.mkAdd(idx, context.mkInt(1)));
+    /**
+     * The distance between the bottom of the stack and the target,
+     * computed on bvBits + 1 bits so that it never overflows.
+     */
+    @Override
+    public BitVecExpr finalStateApproxCriterion(int step) {
+        BitVecExpr diff = context.mkBVSub(context.mkSignExt(1, stack.bottom(step)),
+                                          context.mkSignExt(1, this.bvTarget()));
 
-        ArrayExpr<IntSort, BitVecSort> stack_s = cache.stackStateVar(step);
-        ArrayExpr<IntSort, BitVecSort> stack_splus1 = cache.stackStateVar(step+1);
+        return (BitVecExpr) context.mkITE(context.mkBVSLT(diff, context.mkBV(0, bvBits + 1)),
+                                          context.mkBVNeg(diff), diff);
+    }
 
-        ArrayExpr<IntSort, BitVecSort> expected_stack = context.mkStore(stack_s, idx, (BitVecExpr) this.toBvNum(num));
+    /**
+     * A boolean formula that should be true iff states at step and
+     * step + 1 are linked by a "push(nums[idx])" action.
+     */
+    private BoolExpr pushNumFormula(int step, int idx) {
+        BoolExpr expectedEqualsGotten = stack.pushFormula(step, this.bvNum(idx));
+
+        if (usedMask) {
+            return context.mkImplies(pushVar(step, idx),
+                                     context.mkAnd(expectedEqualsGotten,
+                                                   usedPushFormula(step, idx)));
+        }
 
-        BoolExpr expectedEqualsGotten = context.mkEq(stack_splus1, expected_stack);
-        
         BoolExpr[] notAlreadyUsed = new BoolExpr[step];
         for (int i = 0; i < step; i++) {
-            notAlreadyUsed[i] = cache.pushNumVar(i, num);
+            notAlreadyUsed[i] = pushVar(i, idx);
         }
         BoolExpr uniquenessConstraint = context.mkNot(context.mkOr(notAlreadyUsed));
 
-        return context.mkImplies(cache.pushNumVar(step, num), context.mkAnd(expectedEqualsGotten, uniquenessConstraint, wellIncrementedIndex));
+        int prev = symmetryBreaking ? previousEqualIndex(idx) : -1;
+
+        if (prev >= 0) {
+            // equal numerals are pushed in the order of their indices
+            BoolExpr[] prevUsed = new BoolExpr[step];
+            for (int i = 0; i < step; i++) {
+                prevUsed[i] = pushVar(i, prev);
+            }
+
+            uniquenessConstraint = context.mkAnd(uniquenessConstraint,
+                                                 context.mkOr(prevUsed));
+        }
+
+        return context.mkImplies(pushVar(step, idx), context.mkAnd(expectedEqualsGotten, uniquenessConstraint));
     }
 
 
@@ -148,36 +426,30 @@ public class ChiffresTransitionSystem extends TransitionSystem {
 
 
     private BoolExpr actionFormula(int step, ActionVar actVar, ActionPrecondition precond, ActionResult opRes) {
-        IntExpr indice = cache.idxStateVar(step);
-        IntExpr nextIndice = cache.idxStateVar(step+1);
-
-        BoolExpr twoElements = context.mkGe(indice, context.mkInt(2));
+        BoolExpr twoElements = stack.sizeAtLeast(step, 2);
 
-        IntExpr i1 = (IntExpr) context.mkSub(indice, context.mkInt(1));
-        IntExpr i2 = (IntExpr) context.mkSub(indice, context.mkInt(2));
-        
-        ArrayExpr<IntSort, BitVecSort> stack = cache.stackStateVar(step);
-        ArrayExpr<IntSort, BitVecSort> nextStack = cache.stackStateVar(step+1);
-        
-        BitVecExpr e1 = (BitVecExpr) context.mkSelect(stack, i1);
-        BitVecExpr e2 = (BitVecExpr) context.mkSelect(stack, i2);
+        BitVecExpr e1 = stack.top(step, 1);
+        BitVecExpr e2 = stack.top(step, 2);
 
         BoolExpr prec = precond.get(step,e1,e2);
         BitVecExpr res = opRes.get(step,e1,e2);
-        
-        BoolExpr expectedIndice = context.mkEq(i1, nextIndice);
-        
-        
-        ArrayExpr<IntSort, BitVecSort> expected_stack = context.mkStore(stack, i2, res);
-
-        BoolExpr expectedStack = context.mkEq(expected_stack, nextStack);
-    
+
+        BoolExpr expectedStack = stack.reduceFormula(step, res);
+
         return context.mkImplies(
             actVar.get(step),
-            context.mkAnd(expectedIndice,expectedStack,prec,twoElements)
+            context.mkAnd(expectedStack,prec,twoElements)
         );
     }
 
+    /**
+     * Precondition of commutative actions: the top operand must be
+     * greater or equal to the other one if symmetries are broken.
+     */
+    private BoolExpr commutativePrecondition(int step, BitVecExpr e1, BitVecExpr e2) {
+        return symmetryBreaking ? context.mkBVSGE(e1, e2) : context.mkTrue();
+    }
+
     /**
      * A boolean formula that should be true iff states at step and
      * step + 1 are linked by a "add" action.
@@ -185,8 +457,12 @@ public class ChiffresTransitionSystem extends TransitionSystem {
     private BoolExpr addFormula(int step) {
         ActionResult result = (s, e1, e2) -> context.mkBVAdd(e1, e2);
         ActionVar actionVar = cache::addVar;
-        ActionPrecondition precondition = (s, e1, e2) -> context.mkTrue();
-        return actionFormula(step, actionVar, precondition, result);        
+        ActionPrecondition precondition = (s, e1, e2) -> noOverflows ?
+            context.mkAnd(commutativePrecondition(s, e1, e2),
+                          context.mkBVAddNoOverflow(e1, e2, true),
+                          context.mkBVAddNoUnderflow(e1, e2)) :
+            commutativePrecondition(s, e1, e2);
+        return actionFormula(step, actionVar, precondition, result);
     }
 
     /**
@@ -196,7 +472,10 @@ public class ChiffresTransitionSystem extends TransitionSystem {
     private BoolExpr subFormula(int step) {
         ActionResult result = (s, e1, e2) -> context.mkBVSub(e1, e2);
         ActionVar actionVar = cache::subVar;
-        ActionPrecondition precondition = (s, e1, e2) -> context.mkTrue();
+        ActionPrecondition precondition = (s, e1, e2) -> noOverflows ?
+            context.mkAnd(context.mkBVSubNoOverflow(e1, e2),
+                          context.mkBVSubNoUnderflow(e1, e2, true)) :
+            context.mkTrue();
         return actionFormula(step, actionVar, precondition, result);
     }
 
@@ -207,7 +486,11 @@ public class ChiffresTransitionSystem extends TransitionSystem {
     private BoolExpr mulFormula(int step) {
         ActionResult result = (s, e1, e2) -> context.mkBVMul(e1, e2);
         ActionVar actionVar = cache::mulVar;
-        ActionPrecondition precondition = (s, e1, e2) -> context.mkTrue();
+        ActionPrecondition precondition = (s, e1, e2) -> noOverflows ?
+            context.mkAnd(commutativePrecondition(s, e1, e2),
+                          context.mkBVMulNoOverflow(e1, e2, true),
+                          context.mkBVMulNoUnderflow(e1, e2)) :
+            commutativePrecondition(s, e1, e2);
         return actionFormula(step, actionVar, precondition, result);
     }
 
@@ -216,34 +499,271 @@ public class ChiffresTransitionSystem extends TransitionSystem {
      * step + 1 are linked by a "div" action.
      */
     private BoolExpr divFormula(int step) {
+        if (divisionEncoding == DivisionEncoding.EXACT_MULTIPLICATION) {
+            return exactDivFormula(step);
+        }
+
         ActionResult result = (s, e1, e2) -> context.mkBVSDiv(e1, e2);
         ActionVar actionVar = cache::divVar;
-        ActionPrecondition precondition = (s, e1, e2) -> context.mkNot(context.mkEq(e2,toBvNum(0)));
+        ActionPrecondition precondition = (s, e1, e2) -> {
+            BoolExpr nonZero = context.mkNot(context.mkEq(e2, bvZero()));
+
+            // only MIN / -1 overflows
+            return noOverflows ?
+                context.mkAnd(nonZero, context.mkBVSDivNoOverflow(e1, e2)) :
+                nonZero;
+        };
         return actionFormula(step, actionVar, precondition, result);
     }
 
+    /**
+     * A boolean formula that should be true iff states at step and
+     * step + 1 are linked by an exact "div" action: the result is a
+     * quotient q such that e2 * q = e1. The multiplication must not
+     * overflow whatever noOverflows, otherwise q would only be a
+     * quotient modulo 2^bvBits.
+     */
+    private BoolExpr exactDivFormula(int step) {
+        ActionResult result = (s, e1, e2) -> cache.quotientVar(s);
+        ActionVar actionVar = cache::divVar;
+        ActionPrecondition precondition = (s, e1, e2) -> {
+            BitVecExpr q = cache.quotientVar(s);
+
+            return context.mkAnd(context.mkNot(context.mkEq(e2, bvZero())),
+                                 context.mkEq(context.mkBVMul(e2, q), e1),
+                                 context.mkBVMulNoOverflow(e2, q, true),
+                                 context.mkBVMulNoUnderflow(e2, q));
+        };
+        return actionFormula(step, actionVar, precondition, result);
+    }
+
+    /**
+     * Minimum size of the stack after step actions. After p pushes
+     * and b binary operations, the size is p - b and step = p + b, so
+     * the size has the parity of step and is at least 1 once
+     * something has been pushed.
+     */
+    private int minStackSize(int step) {
+        if (step == 0) {
+            return 0;
+        }
+
+        return (step % 2 == 1) ? 1 : 2;
+    }
+
+    /**
+     * Maximum size of the stack after step actions: at most step
+     * pushes and at most one push per push action.
+     */
+    private int maxStackSize(int step) {
+        return Math.min(step, 2 * pushActions.length - step);
+    }
+
+    /**
+     * The stack can contain exactly one element only after an odd
+     * number of steps and if there are enough numerals to push.
+     */
+    @Override
+    public boolean isFinalStateReachable(int step) {
+        return minStackSize(step) <= 1 && 1 <= maxStackSize(step);
+    }
+
+    @Override
+    public int getNofActions() {
+        return PUSH + pushActions.length;
+    }
+
+    /**
+     * Binary operations need two elements on the stack, which is
+     * impossible at steps 0 and 1 and when all numerals have been
+     * reduced. Pushes need an unused numeral, which is impossible
+     * when the minimal number of pushes already done reaches the
+     * number of numerals.
+     */
+    @Override
+    public boolean isActionEnabled(int step, int action) {
+        int min = minStackSize(step);
+        int max = maxStackSize(step);
+
+        if (min > max) {
+            return false;
+        }
+
+        if (action < PUSH) {
+            return max >= 2;
+        }
+
+        return (step + min) / 2 < pushActions.length;
+    }
+
+    /**
+     * Decision variable of action at step.
+     */
+    private BoolExpr actionVar(int step, int action) {
+        switch (action) {
+        case DIV:
+            return cache.divVar(step);
+        case SUB:
+            return cache.subVar(step);
+        case ADD:
+            return cache.addVar(step);
+        case MUL:
+            return cache.mulVar(step);
+        default:
+            return pushVar(step, pushActions[action - PUSH]);
+        }
+    }
+
+    /**
+     * Transition formula of action at step.
+     */
+    private BoolExpr actionFormula(int step, int action) {
+        switch (action) {
+        case DIV:
+            return divFormula(step);
+        case SUB:
+            return subFormula(step);
+        case ADD:
+            return addFormula(step);
+        case MUL:
+            return mulFormula(step);
+        default:
+            return pushNumFormula(step, pushActions[action - PUSH]);
+        }
+    }
+
+    /**
+     * Exactly one action is taken at step. Actions that cannot be
+     * enabled at step (cf. {@link #isActionEnabled(int, int)}) are
+     * not encoded and their decision variables are false.
+     */
     @Override
     public BoolExpr transitionFormula(int step) {
+        ArrayList<BoolExpr> transitions = new ArrayList<>();
+        ArrayList<BoolExpr> actionTaken = new ArrayList<>();
+        ArrayList<BoolExpr> pushTaken   = new ArrayList<>();
+
+        for (int action = 0; action < getNofActions(); action++) {
+            BoolExpr var = actionVar(step, action);
+
+            if (isActionEnabled(step, action)) {
+                transitions.add(actionFormula(step, action));
+                actionTaken.add(var);
+
+                if (action >= PUSH) {
+                    pushTaken.add(var);
+                }
+            } else {
+                transitions.add(context.mkNot(var));
+            }
+        }
+
+        if (usedMask) {
+            // the set of pushed numerals only changes with pushes
+            pushTaken.add(context.mkEq(used(step + 1), used(step)));
+            transitions.add(context.mkOr(pushTaken.toArray(new BoolExpr[0])));
+        }
+
+        BoolExpr[] taken = actionTaken.toArray(new BoolExpr[0]);
+
+        return context.mkAnd(Z3Utils.exactlyOne(context, cardinality, taken),
+                             context.mkAnd(transitions.toArray(new BoolExpr[0])));
+    }
+
+    /**
+     * The set of numerals already pushed at step, bit i standing for
+     * nums[i].
+     */
+    private BitVecExpr used(int step) {
+        return cache.usedStateVar(step, usedBits());
+    }
+
+    private int usedBits() {
+        return Math.max(nums.length, 1);
+    }
+
+    private BoolExpr isUsed(int step, int i) {
+        return context.mkEq(context.mkExtract(i, i, used(step)), context.mkBV(1, 1));
+    }
+
+    /**
+     * The effect of a push of nums[i] at step on the set of numerals
+     * already pushed: bit i must be clear (and the bit of the previous
+     * equal numeral set if symmetries are broken) and is set at step
+     * + 1.
+     */
+    private BoolExpr usedPushFormula(int step, int i) {
+        BoolExpr uniqueness = context.mkNot(isUsed(step, i));
+
+        int prev = symmetryBreaking ? previousEqualIndex(i) : -1;
+
+        if (prev >= 0) {
+            // equal numerals are pushed in the order of their indices
+            uniqueness = context.mkAnd(uniqueness, isUsed(step, prev));
+        }
+
+        BitVecExpr bit = context.mkBV(BigInteger.ONE.shiftLeft(i).toString(), usedBits());
+        BoolExpr nextUsed = context.mkEq(used(step + 1), context.mkBVOR(used(step), bit));
+
+        return context.mkAnd(uniqueness, nextUsed);
+    }
+
+    /**
+     * The stack and the set of numerals already pushed.
+     */
+    @Override
+    public Expr<?>[] hornStateVars(int step) {
+        Expr<?>[] stackVars = stack.stateVars(step);
+        Expr<?>[] vars = Arrays.copyOf(stackVars, stackVars.length + 1);
+        vars[stackVars.length] = used(step);
+
+        return vars;
+    }
+
+    @Override
+    public BoolExpr hornInitialStateFormula() {
+        if (usedMask) {
+            return initialStateFormula();
+        }
+
+        return context.mkAnd(initialStateFormula(),
+                             context.mkEq(used(0), context.mkBV(0, usedBits())));
+    }
+
+    /**
+     * One formula per action where the uniqueness of pushes is
+     * checked against the set of numerals already pushed instead of
+     * the previous steps. Actions are never pruned as the step is
+     * unknown.
+     */
+    @Override
+    public BoolExpr[] hornTransitionFormulas(int step) {
+        BoolExpr[] rules = new BoolExpr[getNofActions()];
+
+        for (int action = 0; action < PUSH; action++) {
+            BoolExpr effect = (BoolExpr) actionFormula(step, action)
+                .substitute(actionVar(step, action), context.mkTrue());
 
-        BoolExpr[] transitions = new BoolExpr[nums.length+4];
-        BoolExpr[] actionTaken = new BoolExpr[nums.length+4];
-        for (int i = 0; i < nums.length; i++){
-            transitions[i+4] = pushNumFormula(step,nums[i]);
-            actionTaken[i+4] = cache.pushNumVar(step, nums[i]);
+            rules[action] = context.mkAnd(effect, context.mkEq(used(step + 1), used(step)));
         }
-        transitions[0] = divFormula(step);
-        actionTaken[0] = cache.divVar(step);
 
-        transitions[1] = subFormula(step);
-        actionTaken[1] = cache.subVar(step);
+        for (int k = 0; k < pushActions.length; k++) {
+            int i = pushActions[k];
 
-        transitions[2] = addFormula(step);
-        actionTaken[2] = cache.addVar(step);
+            rules[PUSH + k] = context.mkAnd(stack.pushFormula(step, bvNum(i)),
+                                            usedPushFormula(step, i));
+        }
+
+        return rules;
+    }
 
-        transitions[3] = mulFormula(step);
-        actionTaken[3] = cache.mulVar(step);
+    @Override
+    public String getLogic() {
+        if (cardinality == CardinalityEncoding.PSEUDO_BOOLEAN) {
+            return null;
+        }
 
-        return context.mkAnd(Z3Utils.exactlyOne(actionTaken),context.mkAnd(transitions));
+        return stackEncoding == StackEncoding.REGISTERS ? "QF_BV" : "QF_AUFBVLIA";
     }
 
     @Override
@@ -253,18 +773,21 @@ public class ChiffresTransitionSystem extends TransitionSystem {
         System.out.println("- target     : " + String.valueOf(target));
         System.out.println("- bvBits     : " + String.valueOf(bvBits));
         System.out.println("- noOverflows: " + String.valueOf(noOverflows));
+        System.out.println("- cardinality: " + String.valueOf(cardinality));
+        System.out.println("- stack      : " + String.valueOf(stackEncoding));
+        System.out.println("- division   : " + String.valueOf(divisionEncoding));
+        System.out.println("- symmetries : " + (symmetryBreaking ? "broken" : "kept"));
+        System.out.println("- uniqueness : " + (usedMask ? "used mask" : "previous pushes"));
     }
 
     /**
      * Prints the stack at step.
      */
     private void printStackAtStep(Model m, int step) {
-        int idxState = ((IntNum) m.eval(cache.idxStateVar(step), true)).getInt();
+        int idxState = stack.sizeIn(m, step);
 
-        for (int idx = 0; idx <= maxNofSteps; idx++) {
-            BitVecExpr resbv =
-                (BitVecExpr) context.mkSelect(cache.stackStateVar(step),
-                                              context.mkInt(idx));
+        for (int idx = 0; idx < stack.nOfSlots(); idx++) {
+            BitVecExpr resbv = stack.slot(step, idx);
             IntExpr resi = context.mkBV2Int(resbv, true);
 
             if (idx == 0) {
@@ -285,33 +808,87 @@ public class ChiffresTransitionSystem extends TransitionSystem {
         }
     }
 
-    @Override
-    public void printModel(Model m, int steps) {
-        System.out.printf("  init %3s ~> ", " ");
-        printStackAtStep(m, 0);
-        System.out.println();
+    /**
+     * True iff the boolean var is true in m, without building any
+     * expression.
+     */
+    private static boolean isTrue(Model m, BoolExpr var) {
+        Expr<?> value = m.getConstInterp(var);
+
+        return value != null && value.isTrue();
+    }
+
+    /**
+     * The actions of model m until steps transitions, numbered as the
+     * actions of the system except that the push of nums[i] is
+     * numbered PUSH + i (i being the first index of the value if
+     * symmetries are kept). Each action variable is read at most once
+     * from the model. Beware, the model MUST exist!
+     */
+    public int[] getTrace(Model m, int steps) {
+        int[] trace = new int[steps];
 
         for (int step = 0; step < steps; step++) {
-            for (int num : nums) {
-                if (m.eval(cache.pushNumVar(step, num), true).isTrue()) {
-                    System.out.printf("  push %3d ~> ", num);
+            trace[step] = -1;
+
+            for (int action = 0; action < PUSH && trace[step] < 0; action++) {
+                if (isTrue(m, actionVar(step, action))) {
+                    trace[step] = action;
                 }
             }
 
-            if (m.eval(cache.mulVar(step), true).isTrue()) {
-                System.out.printf("  mul %4s ~> ", " ");
+            for (int k = 0; k < pushActions.length && trace[step] < 0; k++) {
+                if (isTrue(m, pushVar(step, pushActions[k]))) {
+                    trace[step] = PUSH + pushActions[k];
+                }
             }
 
-            if (m.eval(cache.divVar(step), true).isTrue()) {
-                System.out.printf("  div %4s ~> ", " ");
+            if (trace[step] < 0) {
+                throw new IllegalStateException("no action at step " + step);
             }
+        }
 
-            if (m.eval(cache.addVar(step), true).isTrue()) {
-                System.out.printf("  add %4s ~> ", " ");
-            }
+        return trace;
+    }
 
-            if (m.eval(cache.subVar(step), true).isTrue()) {
-                System.out.printf("  sub %4s ~> ", " ");
+    /**
+     * The solution of model m until steps transitions: its actions are
+     * read from the model (cf. {@link #getTrace}) and the stacks are
+     * computed by replaying them with the semantics of the bit vector
+     * operations. The stacks are not decoded if bit vectors have more
+     * than 64 bits (cf. {@link Solution#hasValues()}). Beware, the
+     * model MUST exist!
+     */
+    @Override
+    public Solution decode(Model m, int steps) {
+        int[] trace = this.getTrace(m, steps);
+
+        if (bvBits > 64) {
+            return new Solution(Status.SATISFIABLE, nums, trace);
+        }
+
+        return Solution.replay(nums, target, bvBits, trace);
+    }
+
+    @Override
+    public void printModel(Model m, int steps) {
+        if (bvBits <= 64) {
+            System.out.print(this.decode(m, steps).toAnsi());
+            return;
+        }
+
+        System.out.printf("  init %3s ~> ", " ");
+        printStackAtStep(m, 0);
+        System.out.println();
+
+        int[] trace = this.getTrace(m, steps);
+        String[] names = {"div", "sub", "add", "mul"};
+
+        for (int step = 0; step < steps; step++) {
+            if (trace[step] >= PUSH) {
+                System.out.printf("  push %3d ~> ", nums[trace[step] - PUSH]);
+            } else {
+                System.out.printf("  %s %4s ~> ", names[trace[step]], " ");
             }
 
             printStackAtStep(m, step + 1);
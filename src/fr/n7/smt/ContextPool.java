@@ -0,0 +1,168 @@
+package fr.n7.smt;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.microsoft.z3.*;
+
+/**
+ * A bounded pool of Z3 contexts shared by concurrent solve sessions.
+ *
+ * All contexts are created when the pool is created. A context is
+ * used by at most one session at a time (Z3 contexts are not thread
+ * safe) and is closed and replaced by a fresh one after a fixed
+ * number of sessions, so that native memory does not grow without
+ * limit.
+ */
+public class ContextPool implements AutoCloseable {
+
+    private final ArrayBlockingQueue<Context>        idle;
+    private final IdentityHashMap<Context, Integer>  uses = new IdentityHashMap<>();
+    private final Set<Context>                       acquired =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+    private final int                                size;
+    private final int                                maxUses;
+    private final SolverProfile                      profile;
+    private boolean                                  closed = false;
+
+    /**
+     * Creates a pool of size contexts, each context being renewed
+     * after 64 sessions.
+     *
+     * @param size the number of contexts
+     */
+    public ContextPool(int size) {
+        this(size, 64);
+    }
+
+    /**
+     * Creates a pool of size contexts.
+     *
+     * @param size the number of contexts
+     * @param maxUses the number of sessions after which a context
+     *        is closed and replaced by a fresh one
+     */
+    public ContextPool(int size, int maxUses) {
+        this(size, maxUses, SolverProfile.DEFAULT);
+    }
+
+    /**
+     * Creates a pool of size contexts configured by profile.
+     *
+     * @param size the number of contexts
+     * @param maxUses the number of sessions after which a context
+     *        is closed and replaced by a fresh one
+     * @param profile the profile used to create contexts and the
+     *        solvers of the sessions
+     */
+    public ContextPool(int size, int maxUses, SolverProfile profile) {
+        if (size <= 0 || maxUses <= 0) {
+            throw new IllegalArgumentException("pool size and max uses must be positive");
+        }
+
+        this.size    = size;
+        this.maxUses = maxUses;
+        this.profile = profile;
+        this.idle    = new ArrayBlockingQueue<>(size);
+
+        for (int i = 0; i < size; i++) {
+            this.idle.add(this.newContext());
+        }
+    }
+
+    private synchronized Context newContext() {
+        Context ctx = this.profile.newContext();
+        this.uses.put(ctx, 0);
+
+        return ctx;
+    }
+
+    /**
+     * The profile of the contexts of the pool.
+     */
+    public SolverProfile getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * The number of contexts of the pool.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Takes a context from the pool, waiting for one to be released
+     * if necessary.
+     */
+    public Context acquire() throws InterruptedException {
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("context pool is closed");
+            }
+        }
+
+        Context ctx = this.idle.take();
+
+        synchronized (this) {
+            this.acquired.add(ctx);
+        }
+
+        return ctx;
+    }
+
+    /**
+     * Gives a context back to the pool. The context must not be used
+     * by the caller afterwards.
+     *
+     * @throws IllegalArgumentException if ctx was not acquired from
+     *         this pool or was already released
+     */
+    public void release(Context ctx) {
+        Context next = ctx;
+
+        synchronized (this) {
+            if (!this.acquired.remove(ctx)) {
+                throw new IllegalArgumentException("context not acquired from this pool " +
+                                                   "or already released");
+            }
+
+            int n = this.uses.remove(ctx) + 1;
+
+            if (this.closed) {
+                ctx.close();
+                return;
+            }
+
+            if (n >= this.maxUses) {
+                ctx.close();
+                next = this.newContext();
+            } else {
+                this.uses.put(ctx, n);
+            }
+        }
+
+        this.idle.add(next);
+    }
+
+    /**
+     * Closes all idle contexts. Contexts still used by sessions are
+     * closed when released.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+
+        Context ctx;
+        while ((ctx = this.idle.poll()) != null) {
+            synchronized (this) {
+                this.uses.remove(ctx);
+            }
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package fr.n7.smt;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time after which a resolution must stop. All timeouts
+ * are expressed in milliseconds.
+ */
+public final class Deadline {
+
+    // shared daemon thread firing the expiry actions of watched deadlines
+    private static final ScheduledThreadPoolExecutor WATCHDOG = newWatchdog();
+
+    private static ScheduledThreadPoolExecutor newWatchdog() {
+        ScheduledThreadPoolExecutor ex = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "deadline-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        ex.setRemoveOnCancelPolicy(true);
+
+        return ex;
+    }
+
+    // end of the deadline as System.nanoTime() value, unused if unbounded
+    private final long    endNanos;
+    private final boolean unbounded;
+
+    private Deadline(long endNanos, boolean unbounded) {
+        this.endNanos  = endNanos;
+        this.unbounded = unbounded;
+    }
+
+    /**
+     * A deadline that never expires.
+     */
+    public static Deadline none() {
+        return new Deadline(0, true);
+    }
+
+    /**
+     * A deadline expiring timeout milliseconds from now. If timeout
+     * is negative, the deadline never expires.
+     */
+    public static Deadline in(long timeout) {
+        if (timeout < 0) {
+            return none();
+        }
+
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout),
+                            false);
+    }
+
+    public boolean isUnbounded() {
+        return this.unbounded;
+    }
+
+    /**
+     * The remaining time in milliseconds, 0 if the deadline is
+     * expired and Long.MAX_VALUE if it is unbounded.
+     */
+    public long remainingMillis() {
+        if (this.unbounded) {
+            return Long.MAX_VALUE;
+        }
+
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(this.endNanos - System.nanoTime()));
+    }
+
+    public boolean expired() {
+        return !this.unbounded && this.endNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * The earliest of this deadline and a deadline expiring timeout
+     * milliseconds from now.
+     */
+    public Deadline min(long timeout) {
+        Deadline other = in(timeout);
+
+        if (this.unbounded) {
+            return other;
+        }
+
+        if (other.unbounded || this.endNanos - other.endNanos <= 0) {
+            return this;
+        }
+
+        return other;
+    }
+
+    /**
+     * The remaining time as a value for the Z3 "timeout" parameter,
+     * i.e. at least 1 millisecond and at most Integer.MAX_VALUE.
+     */
+    public int z3Timeout() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, this.remainingMillis()));
+    }
+
+    /**
+     * Runs onExpiry when the deadline expires, unless the returned
+     * watch is closed before. Nothing is run for an unbounded
+     * deadline.
+     */
+    public Watch watch(Runnable onExpiry) {
+        if (this.unbounded) {
+            return new Watch(null);
+        }
+
+        return new Watch(WATCHDOG.schedule(onExpiry,
+                                           this.endNanos - System.nanoTime(),
+                                           TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * A pending expiry action, cancelled by close.
+     */
+    public static final class Watch implements AutoCloseable {
+        private final ScheduledFuture<?> future;
+
+        private Watch(ScheduledFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void close() {
+            if (this.future != null) {
+                this.future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package fr.n7.smt;
+
+/**
+ * The encodings of the division of {@link ChiffresTransitionSystem}.
+ */
+public enum DivisionEncoding {
+    /**
+     * The signed bit vector division (bvsdiv) of the two top values,
+     * truncated toward 0. The division circuit is the largest one
+     * of the encoding.
+     */
+    SDIV,
+
+    /**
+     * A fresh quotient q per step such that e2 * q = e1 without
+     * overflow, e2 being non-zero: only exact divisions are allowed,
+     * as in the real game. It only needs a multiplier circuit.
+     */
+    EXACT_MULTIPLICATION
+}
@@ -0,0 +1,23 @@
+package fr.n7.smt;
+
+/**
+ * The engines used by {@link BMC} to decide if the final state of a
+ * transition system is reachable.
+ */
+public enum Engine {
+    /**
+     * Bounded unrolling of the transition relation, one solver check
+     * per depth. UNSAT is only concluded once the maximum number of
+     * steps is reached.
+     */
+    UNROLLING,
+
+    /**
+     * Constrained Horn clauses solved by the Spacer engine of Z3: the
+     * reachable states are over-approximated by an inductive
+     * invariant, so UNSAT is concluded without enumerating depths.
+     * The transition system must provide a step-invariant encoding
+     * (cf. {@link TransitionSystem#hornStateVars(int)}).
+     */
+    SPACER
+}
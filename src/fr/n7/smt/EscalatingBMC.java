@@ -0,0 +1,147 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.*;
+
+/**
+ * An exact BMC resolution of a "Countdown" problem without overflows
+ * that chooses the width of bit vectors itself.
+ *
+ * The resolution starts with the narrowest width holding the
+ * starting integers and the target (cf.
+ * {@link ChiffresTransitionSystem#minimalBvBits}). As overflows are
+ * forbidden, a solution found with a width is a solution of the
+ * problem on integers, but UNSAT may only mean that intermediate
+ * values do not fit: the width is then doubled, up to a width where
+ * no operation can overflow (cf.
+ * {@link ChiffresTransitionSystem#safeBvBits}), where UNSAT is
+ * definitive.
+ */
+public class EscalatingBMC {
+
+    private final int[]         nums;
+    private final int           target;
+    private final SolverProfile profile;
+    private StackEncoding       stackEncoding = StackEncoding.ARRAY;
+    private boolean             verbose       = true;
+
+    // width and actions of the last resolution
+    private int                 bvBits;
+    private int[]               trace;
+
+    /**
+     * Creates an escalating resolution of a "Countdown" problem.
+     *
+     * @param profile the profile of the contexts and of the solvers
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     */
+    public EscalatingBMC(SolverProfile profile, int[] nums, int target) {
+        this.profile = profile;
+        this.nums    = nums;
+        this.target  = target;
+    }
+
+    /**
+     * Sets the stack encoding of the transition systems.
+     */
+    public void setStackEncoding(StackEncoding stackEncoding) {
+        this.stackEncoding = stackEncoding;
+    }
+
+    /**
+     * If verbose is false, nothing is printed during resolution.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Tries to solve the problem.
+     *
+     * @param timeout the timeout of the whole resolution in
+     *        milliseconds. If negative, no timeout is used
+     */
+    public Status solve(int timeout) {
+        return this.solve(Deadline.in(timeout));
+    }
+
+    /**
+     * Tries to solve the problem before deadline, widening bit vectors
+     * while the result may be an artefact of their width.
+     *
+     * @param deadline the deadline of the whole resolution
+     */
+    public Status solve(Deadline deadline) {
+        int safeBits = ChiffresTransitionSystem.safeBvBits(nums, target);
+
+        this.bvBits = ChiffresTransitionSystem.minimalBvBits(nums, target);
+        this.trace  = null;
+
+        while (true) {
+            Status s = this.solveWith(bvBits, deadline);
+
+            if (verbose) {
+                System.out.println("" + s + " with " + bvBits + " bits");
+            }
+
+            if (s != Status.UNSATISFIABLE || bvBits >= safeBits) {
+                return s;
+            }
+
+            this.bvBits = Math.min(2 * bvBits, safeBits);
+        }
+    }
+
+    /**
+     * Solves the problem with bvBits. Operations are guarded against
+     * overflows by the transition system, the solution is still
+     * replayed (up to 64 bits) and reported as UNSAT if it overflows.
+     * Each starting numeral has its own push variable (cf.
+     * {@link ChiffresTransitionSystem#setSymmetryBreaking}).
+     */
+    private Status solveWith(int bvBits, Deadline deadline) {
+        try (SolveSession session = new SolveSession(profile, nums, target,
+                                                     bvBits, true)) {
+            ChiffresTransitionSystem ts = session.getTransitionSystem();
+            ts.setStackEncoding(stackEncoding);
+            // equal numerals can each be pushed once
+            ts.setSymmetryBreaking(true);
+
+            BMC bmc = session.newBMC(false, false);
+            bmc.setVerbose(false);
+
+            Solution solution = bmc.findSolution(deadline);
+            Status s = solution.getStatus();
+
+            if (solution.hasSolution()) {
+                int[] t = solution.getActions();
+
+                if (bvBits <= 64 &&
+                    !TraceVerifier.isSolution(nums, target, bvBits, true, t)) {
+                    return Status.UNSATISFIABLE;
+                }
+
+                this.trace = t;
+            }
+
+            return s;
+        }
+    }
+
+    /**
+     * The width of bit vectors used by the last step of the last
+     * resolution.
+     */
+    public int getBvBits() {
+        return this.bvBits;
+    }
+
+    /**
+     * The actions of the solution found by the last resolution (cf.
+     * {@link ChiffresTransitionSystem#getTrace}), null if there is
+     * none.
+     */
+    public int[] getTrace() {
+        return this.trace;
+    }
+}
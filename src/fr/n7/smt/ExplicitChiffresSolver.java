@@ -0,0 +1,423 @@
+package fr.n7.smt;
+
+import java.util.Arrays;
+
+import com.microsoft.z3.Status;
+
+/**
+ * An explicit-state solver of the "Countdown" game that does not use
+ * Z3. The values reachable with each subset of the starting integers
+ * are computed by dynamic programming, subsets being explored by
+ * increasing size: a value is reachable with a subset if it is a
+ * starting integer or the result of an operation on values reachable
+ * with two disjoint subsets of it.
+ *
+ * Values are signed integers on bvBits bits (at most 32) with the
+ * semantics of the bit vector encoding of
+ * {@link ChiffresTransitionSystem}: operations wrap around, or are
+ * forbidden if they overflow when noOverflows is true. Each starting
+ * integer can be used once, equal integers included.
+ */
+public class ExplicitChiffresSolver {
+
+    // no result for an operation
+    static final long NONE = Long.MIN_VALUE;
+
+    private int[]            nums;
+    private int              target;
+    private int              bvBits;
+    private boolean          noOverflows;
+    private boolean          verbose     = true;
+    private volatile boolean interrupted = false;
+
+    // values reachable with each subset of nums, null if not computed
+    private IntHashSet[]     values;
+
+    // closest value found and the subset reaching it
+    private int              closest;
+    private int              closestSubset = 0;
+    private long             closestDistance;
+
+    /**
+     * Creates a new explicit solver.
+     *
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     * @param bvBits the number of bits of values, at most 32
+     * @param noOverflows a boolean that is true if you do not want
+     *        overflows
+     */
+    public ExplicitChiffresSolver(int[] nums, int target, int bvBits,
+                                  boolean noOverflows) {
+        if (bvBits < 1 || bvBits > 32) {
+            throw new IllegalArgumentException("bvBits must be in [1, 32]: " + bvBits);
+        }
+
+        if (nums.length > 24) {
+            throw new IllegalArgumentException("too many starting integers: " +
+                                               nums.length);
+        }
+
+        this.bvBits      = bvBits;
+        this.noOverflows = noOverflows;
+        this.nums        = new int[nums.length];
+
+        for (int i = 0; i < nums.length; i++) {
+            this.nums[i] = toValue(nums[i]);
+        }
+
+        this.target = toValue(target);
+    }
+
+    /**
+     * If verbose is false, nothing is printed during resolution.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Interrupts the resolution, which returns UNKNOWN. May be called
+     * from another thread.
+     */
+    public void interrupt() {
+        this.interrupted = true;
+    }
+
+    /**
+     * The signed value on bvBits bits of x.
+     */
+    static int wrap(long x, int bvBits) {
+        return (int) ((x << (64 - bvBits)) >> (64 - bvBits));
+    }
+
+    /**
+     * True iff x is a signed value on bvBits bits.
+     */
+    static boolean fits(long x, int bvBits) {
+        return -(1L << (bvBits - 1)) <= x && x < (1L << (bvBits - 1));
+    }
+
+    /**
+     * The result of action on e1, the top of the stack, and e2, the
+     * element below, or NONE if the action is not possible.
+     */
+    static long apply(int action, int e1, int e2, int bvBits, boolean noOverflows) {
+        long exact;
+
+        switch (action) {
+        case ChiffresTransitionSystem.DIV:
+            if (e2 == 0) {
+                return NONE;
+            }
+            exact = (long) e1 / e2;
+            break;
+        case ChiffresTransitionSystem.SUB:
+            exact = (long) e1 - e2;
+            break;
+        case ChiffresTransitionSystem.ADD:
+            exact = (long) e1 + e2;
+            break;
+        default:
+            exact = (long) e1 * e2;
+            break;
+        }
+
+        if (noOverflows && !fits(exact, bvBits)) {
+            return NONE;
+        }
+
+        return wrap(exact, bvBits);
+    }
+
+    /**
+     * The value of the numeral num, cf. the numerals of the bit
+     * vector encoding.
+     */
+    private int toValue(int num) {
+        if (noOverflows && !fits(num, bvBits)) {
+            throw new Error("the numeral " + String.valueOf(num) +
+                            " exceed signed bitvectors of size " +
+                            String.valueOf(bvBits));
+        }
+
+        return wrap(num, bvBits);
+    }
+
+    private long apply(int action, int e1, int e2) {
+        return apply(action, e1, e2, bvBits, noOverflows);
+    }
+
+    private void addValue(IntHashSet set, long value) {
+        if (value != NONE) {
+            set.add((int) value);
+        }
+    }
+
+    /**
+     * The values reachable with subset, which contains at least two
+     * integers, from the values of its strict subsets. Returns null
+     * if the resolution must stop.
+     */
+    private IntHashSet combine(int subset, Deadline deadline) {
+        IntHashSet res = new IntHashSet();
+
+        // each unordered split is visited once, both orders are used
+        for (int left = (subset - 1) & subset; left > 0; left = (left - 1) & subset) {
+            int right = subset ^ left;
+
+            if (left < right) {
+                continue;
+            }
+
+            int[] lefts  = values[left].toArray();
+            int[] rights = values[right].toArray();
+
+            for (int a : lefts) {
+                if (interrupted || deadline.expired()) {
+                    return null;
+                }
+
+                for (int b : rights) {
+                    addValue(res, apply(ChiffresTransitionSystem.ADD, a, b));
+                    addValue(res, apply(ChiffresTransitionSystem.MUL, a, b));
+                    addValue(res, apply(ChiffresTransitionSystem.SUB, a, b));
+                    addValue(res, apply(ChiffresTransitionSystem.SUB, b, a));
+                    addValue(res, apply(ChiffresTransitionSystem.DIV, a, b));
+                    addValue(res, apply(ChiffresTransitionSystem.DIV, b, a));
+                }
+            }
+        }
+
+        return res;
+    }
+
+    private void updateClosest(int subset, IntHashSet set) {
+        for (int v : set.toArray()) {
+            long distance = Math.abs((long) v - target);
+
+            if (closestSubset == 0 || distance < closestDistance) {
+                closest         = v;
+                closestSubset   = subset;
+                closestDistance = distance;
+            }
+        }
+    }
+
+    /**
+     * Tries to solve the problem.
+     *
+     * @param timeout the timeout to use in milliseconds. If negative,
+     *        no timeout is used
+     */
+    public Status solve(int timeout) {
+        return this.solve(Deadline.in(timeout));
+    }
+
+    /**
+     * Tries to solve the problem before deadline. Returns SAT as soon
+     * as the target is reached with the smallest number of integers,
+     * UNSAT if it is unreachable and UNKNOWN if the resolution was
+     * interrupted. In all cases, the closest value found so far is
+     * available with {@link #getClosest()}.
+     *
+     * @param deadline the deadline of the resolution
+     */
+    public Status solve(Deadline deadline) {
+        int n = nums.length;
+
+        this.values        = new IntHashSet[1 << n];
+        this.closestSubset = 0;
+
+        if (verbose) {
+            this.printParams();
+        }
+
+        for (int size = 1; size <= n; size++) {
+            for (int subset = 1; subset < (1 << n); subset++) {
+                if (Integer.bitCount(subset) != size) {
+                    continue;
+                }
+
+                IntHashSet set;
+
+                if (size == 1) {
+                    set = new IntHashSet();
+                    set.add(nums[Integer.numberOfTrailingZeros(subset)]);
+                } else {
+                    set = this.combine(subset, deadline);
+
+                    if (set == null) {
+                        if (verbose) {
+                            System.out.println("UNKNOWN with " + size + " integers");
+                        }
+
+                        return Status.UNKNOWN;
+                    }
+                }
+
+                values[subset] = set;
+                this.updateClosest(subset, set);
+            }
+
+            if (closestSubset != 0 && closestDistance == 0) {
+                if (verbose) {
+                    System.out.println("SATISFIABLE at step " + (2 * size - 1));
+                    this.printTrace();
+                }
+
+                return Status.SATISFIABLE;
+            }
+
+            if (verbose && size < n) {
+                System.out.println("UNSATISFIABLE with " + size + " integers");
+            }
+        }
+
+        if (verbose) {
+            System.out.println("UNSATISFIABLE after all steps");
+
+            if (closestSubset != 0) {
+                System.out.println("Closest solution found:");
+                this.printTrace();
+            }
+        }
+
+        return Status.UNSATISFIABLE;
+    }
+
+    /**
+     * The value closest to the target found by the last resolution,
+     * the target itself if it was reached.
+     */
+    public int getClosest() {
+        if (closestSubset == 0) {
+            throw new IllegalStateException("no value found");
+        }
+
+        return this.closest;
+    }
+
+    /**
+     * The distance between the closest value and the target.
+     */
+    public long getDistance() {
+        if (closestSubset == 0) {
+            throw new IllegalStateException("no value found");
+        }
+
+        return this.closestDistance;
+    }
+
+    /**
+     * Appends to trace, from index n, the actions computing value
+     * with subset. Returns the index after the last action.
+     */
+    private int buildTrace(int subset, int value, int[] trace, int n) {
+        if (Integer.bitCount(subset) == 1) {
+            trace[n] = ChiffresTransitionSystem.PUSH + Integer.numberOfTrailingZeros(subset);
+
+            return n + 1;
+        }
+
+        // top is computed last and therefore is on top of the stack
+        for (int top = (subset - 1) & subset; top > 0; top = (top - 1) & subset) {
+            int below = subset ^ top;
+
+            for (int e1 : values[top].toArray()) {
+                for (int e2 : values[below].toArray()) {
+                    for (int action = 0; action < ChiffresTransitionSystem.PUSH; action++) {
+                        if (apply(action, e1, e2) == value) {
+                            n = buildTrace(below, e2, trace, n);
+                            n = buildTrace(top, e1, trace, n);
+                            trace[n] = action;
+
+                            return n + 1;
+                        }
+                    }
+                }
+            }
+        }
+
+        throw new IllegalStateException(value + " is not reachable");
+    }
+
+    /**
+     * The actions computing the closest value found, numbered as the
+     * actions of {@link ChiffresTransitionSystem}, except that the
+     * push of nums[i] is numbered PUSH + i.
+     */
+    public int[] getTrace() {
+        int subset = closestSubset;
+
+        if (subset == 0) {
+            throw new IllegalStateException("no value found");
+        }
+
+        int[] trace = new int[2 * Integer.bitCount(subset) - 1];
+        this.buildTrace(subset, closest, trace, 0);
+
+        return trace;
+    }
+
+    private void printParams() {
+        System.out.println("\nExplicit solver parameters:");
+        System.out.println("- nums       : " + Arrays.toString(nums));
+        System.out.println("- target     : " + String.valueOf(target));
+        System.out.println("- bvBits     : " + String.valueOf(bvBits));
+        System.out.println("- noOverflows: " + String.valueOf(noOverflows));
+    }
+
+    /**
+     * Prints the stack as {@link ChiffresTransitionSystem#printModel}.
+     */
+    private void printStack(int[] slots, int size) {
+        for (int idx = 0; idx < slots.length; idx++) {
+            if (idx == 0) {
+                System.out.print("|");
+            }
+
+            if (idx < size) {
+                System.out.print("|\033[7m");
+            } else {
+                System.out.print("|");
+            }
+
+            System.out.printf("%4d", slots[idx]);
+
+            if (idx < size) {
+                System.out.print("\033[m");
+            }
+        }
+    }
+
+    /**
+     * Prints the trace of the closest value found as
+     * {@link ChiffresTransitionSystem#printModel}.
+     */
+    public void printTrace() {
+        int[] trace = this.getTrace();
+        int[] slots = new int[Math.max(nums.length, 1)];
+        int size = 0;
+
+        System.out.printf("  init %3s ~> ", " ");
+        printStack(slots, size);
+        System.out.println();
+
+        for (int action : trace) {
+            if (action >= ChiffresTransitionSystem.PUSH) {
+                int num = nums[action - ChiffresTransitionSystem.PUSH];
+                System.out.printf("  push %3d ~> ", num);
+                slots[size++] = num;
+            } else {
+                String[] names = {"div", "sub", "add", "mul"};
+                System.out.printf("  %s %4s ~> ", names[action], " ");
+                slots[size - 2] = (int) apply(action, slots[size - 1], slots[size - 2]);
+                size--;
+            }
+
+            printStack(slots, size);
+            System.out.println();
+        }
+    }
+}
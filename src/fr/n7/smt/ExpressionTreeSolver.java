@@ -0,0 +1,449 @@
+package fr.n7.smt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.microsoft.z3.*;
+
+/**
+ * A resolution of a "Countdown" problem that encodes the expression
+ * directly as a binary tree instead of unrolling the stack machine
+ * of {@link ChiffresTransitionSystem}.
+ *
+ * An expression using k + 1 starting integers has k operator nodes.
+ * Node j has one literal per operation, a left and a right operand
+ * chosen by literals among the starting integers (the leaves) and
+ * the nodes 0 to j - 1, and a bit vector value. With k nodes, node
+ * k - 1 is the root and must compute the target, every other node
+ * is the operand of exactly one later node and every starting
+ * integer is an operand at most once. There is no stack, hence no
+ * array and no index arithmetic: the problem is in pure QF_BV.
+ *
+ * The number of nodes is increased until a solution is found, node
+ * definitions being kept from one number of nodes to the next: the
+ * first solution found uses the fewest starting integers.
+ *
+ * Operations have the semantics of {@link ChiffresTransitionSystem}
+ * with the left operand as e1 (the top of the stack): bvsdiv for
+ * division and, if noOverflows is true, no operation may overflow.
+ * Equal starting integers are used in the order of their indices and
+ * the left operand of additions and multiplications is greater or
+ * equal to the right one.
+ */
+@SuppressWarnings("unchecked")
+public class ExpressionTreeSolver {
+
+    private static final String[] OPS = {"div", "sub", "add", "mul"};
+
+    private final SolverProfile profile;
+    private final int[]         nums;
+    private final int           target;
+    private final int           bvBits;
+    private final boolean       noOverflows;
+    private boolean             verbose = true;
+
+    // actions of the solution found by the last resolution
+    private int[]               trace;
+
+    // context of the current resolution, leaves and variables of
+    // the nodes indexed by node
+    private Context               context;
+    private BitVecNum[]           leaves;
+    private ArrayList<BitVecExpr> values;
+    private ArrayList<BoolExpr[]> opVars;
+    private ArrayList<BoolExpr[]> leftVars;
+    private ArrayList<BoolExpr[]> rightVars;
+
+    /**
+     * Creates a new expression tree resolution.
+     *
+     * @param profile the profile of the context and of the solver
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     * @param bvBits the number of bits in bitvectors
+     * @param noOverflows a boolean that is true if you do not want
+     *        overflows with bitvectors
+     */
+    public ExpressionTreeSolver(SolverProfile profile, int[] nums, int target,
+                                int bvBits, boolean noOverflows) {
+        if (noOverflows) {
+            for (int num : nums) {
+                checkFits(num, bvBits);
+            }
+
+            checkFits(target, bvBits);
+        }
+
+        this.profile     = profile;
+        this.nums        = nums;
+        this.target      = target;
+        this.bvBits      = bvBits;
+        this.noOverflows = noOverflows;
+    }
+
+    private static void checkFits(int num, int bvBits) {
+        BigInteger max = BigInteger.ONE.shiftLeft(bvBits - 1);
+        BigInteger n   = BigInteger.valueOf(num);
+
+        if (n.compareTo(max.negate()) < 0 || n.compareTo(max) >= 0) {
+            throw new IllegalArgumentException("the numeral " + num +
+                                               " exceed signed bitvectors of size " +
+                                               bvBits);
+        }
+    }
+
+    /**
+     * If verbose is false, nothing is printed during resolution.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Tries to solve the problem.
+     *
+     * @param timeout the timeout to use in milliseconds. If negative,
+     *        no timeout is used
+     */
+    public Status solve(int timeout) {
+        return this.solve(Deadline.in(timeout));
+    }
+
+    /**
+     * Tries to solve the problem before deadline, with 0 to
+     * nums.length - 1 operator nodes. Returns SAT as soon as a
+     * solution is found, UNSAT if there is none and UNKNOWN if the
+     * deadline expired.
+     *
+     * @param deadline the deadline of the resolution
+     */
+    public Status solve(Deadline deadline) {
+        this.trace = null;
+
+        if (verbose) {
+            this.printParams();
+        }
+
+        // without operator, the target must be a starting integer
+        for (int i = 0; i < nums.length; i++) {
+            if (this.wrap(nums[i]).equals(this.wrap(target))) {
+                this.trace = new int[] {ChiffresTransitionSystem.PUSH + i};
+
+                if (verbose) {
+                    System.out.println("SATISFIABLE with 0 nodes");
+                    this.printTrace();
+                }
+
+                return Status.SATISFIABLE;
+            }
+        }
+
+        if (verbose) {
+            System.out.println("UNSATISFIABLE with 0 nodes");
+        }
+
+        try (Context ctx = profile.newContext()) {
+            Deadline.Watch watch = deadline.watch(ctx::interrupt);
+
+            try {
+                this.context   = ctx;
+                this.leaves    = new BitVecNum[nums.length];
+                this.values    = new ArrayList<>();
+                this.opVars    = new ArrayList<>();
+                this.leftVars  = new ArrayList<>();
+                this.rightVars = new ArrayList<>();
+
+                for (int i = 0; i < nums.length; i++) {
+                    leaves[i] = context.mkBV(nums[i], bvBits);
+                }
+
+                Solver solver = profile.mkSolver(context);
+
+                for (int k = 1; k < nums.length; k++) {
+                    if (deadline.expired()) {
+                        return Status.UNKNOWN;
+                    }
+
+                    solver.add(this.nodeFormula(k - 1));
+
+                    solver.push();
+                    solver.add(this.treeFormula(k));
+
+                    if (!deadline.isUnbounded()) {
+                        Params p = context.mkParams();
+                        p.add("timeout", deadline.z3Timeout());
+                        solver.setParameters(p);
+                    }
+
+                    Status s = solver.check();
+
+                    if (verbose) {
+                        System.out.println("" + s + " with " + k + " nodes");
+                    }
+
+                    if (s == Status.SATISFIABLE) {
+                        Model m = solver.getModel();
+                        ArrayList<Integer> actions = new ArrayList<>();
+
+                        this.appendTrace(m, nums.length + k - 1, actions);
+                        this.trace = actions.stream().mapToInt(Integer::intValue).toArray();
+
+                        if (verbose) {
+                            this.printTrace();
+                        }
+
+                        return s;
+                    }
+
+                    if (s == Status.UNKNOWN) {
+                        return s;
+                    }
+
+                    solver.pop();
+                }
+
+                return Status.UNSATISFIABLE;
+            } finally {
+                watch.close();
+
+                this.context   = null;
+                this.leaves    = null;
+                this.values    = null;
+                this.opVars    = null;
+                this.leftVars  = null;
+                this.rightVars = null;
+            }
+        }
+    }
+
+    /**
+     * Tries to solve the problem as {@link #findSolution(Deadline)}.
+     *
+     * @param timeout the timeout to use in milliseconds. If negative,
+     *        no timeout is used
+     */
+    public Solution findSolution(int timeout) {
+        return this.findSolution(Deadline.in(timeout));
+    }
+
+    /**
+     * Tries to solve the problem as {@link #solve(Deadline)} and
+     * returns the result, the stacks of the solution being computed
+     * by replaying its actions up to 64 bits (cf. {@link Solution}).
+     *
+     * @param deadline the deadline of the resolution
+     */
+    public Solution findSolution(Deadline deadline) {
+        Status s = this.solve(deadline);
+
+        if (trace == null) {
+            return new Solution(s);
+        }
+
+        if (bvBits > 64) {
+            return new Solution(s, nums, trace);
+        }
+
+        return Solution.replay(nums, target, bvBits, trace);
+    }
+
+    /**
+     * The signed value of x on bvBits bits, as a BigInteger so that
+     * any width can be compared.
+     */
+    private BigInteger wrap(long x) {
+        BigInteger modulus = BigInteger.ONE.shiftLeft(bvBits);
+        BigInteger v = BigInteger.valueOf(x).mod(modulus);
+
+        return v.testBit(bvBits - 1) ? v.subtract(modulus) : v;
+    }
+
+    /**
+     * The value of operand c: the starting integer c if c is less than
+     * nums.length, node c - nums.length otherwise.
+     */
+    private BitVecExpr operand(int c) {
+        return c < nums.length ? leaves[c] : values.get(c - nums.length);
+    }
+
+    /**
+     * The definition of node j: its operation, its operands and its
+     * value. It does not depend on the number of nodes.
+     */
+    private BoolExpr nodeFormula(int j) {
+        int nofOperands = nums.length + j;
+
+        BitVecExpr value = context.mkBVConst("val@" + j, bvBits);
+        BitVecExpr e1    = context.mkBVConst("left@" + j, bvBits);
+        BitVecExpr e2    = context.mkBVConst("right@" + j, bvBits);
+
+        BoolExpr[] ops   = new BoolExpr[OPS.length];
+        BoolExpr[] left  = new BoolExpr[nofOperands];
+        BoolExpr[] right = new BoolExpr[nofOperands];
+
+        ArrayList<BoolExpr> formulas = new ArrayList<>();
+
+        for (int op = 0; op < OPS.length; op++) {
+            ops[op] = context.mkBoolConst(OPS[op] + "@" + j);
+        }
+
+        for (int c = 0; c < nofOperands; c++) {
+            left[c]  = context.mkBoolConst("left_" + c + "@" + j);
+            right[c] = context.mkBoolConst("right_" + c + "@" + j);
+
+            formulas.add(context.mkImplies(left[c], context.mkEq(e1, operand(c))));
+            formulas.add(context.mkImplies(right[c], context.mkEq(e2, operand(c))));
+            formulas.add(context.mkNot(context.mkAnd(left[c], right[c])));
+        }
+
+        formulas.add(Z3Utils.exactlyOne(context, ops));
+        formulas.add(Z3Utils.exactlyOne(context, left));
+        formulas.add(Z3Utils.exactlyOne(context, right));
+
+        BoolExpr divPrec = context.mkNot(context.mkEq(e2, context.mkBV(0, bvBits)));
+        BoolExpr subPrec = context.mkTrue();
+        BoolExpr addPrec = context.mkBVSGE(e1, e2);
+        BoolExpr mulPrec = context.mkBVSGE(e1, e2);
+
+        if (noOverflows) {
+            divPrec = context.mkAnd(divPrec, context.mkBVSDivNoOverflow(e1, e2));
+            subPrec = context.mkAnd(context.mkBVSubNoOverflow(e1, e2),
+                                    context.mkBVSubNoUnderflow(e1, e2, true));
+            addPrec = context.mkAnd(addPrec,
+                                    context.mkBVAddNoOverflow(e1, e2, true),
+                                    context.mkBVAddNoUnderflow(e1, e2));
+            mulPrec = context.mkAnd(mulPrec,
+                                    context.mkBVMulNoOverflow(e1, e2, true),
+                                    context.mkBVMulNoUnderflow(e1, e2));
+        }
+
+        int d = ChiffresTransitionSystem.DIV;
+        int s = ChiffresTransitionSystem.SUB;
+        int a = ChiffresTransitionSystem.ADD;
+        int m = ChiffresTransitionSystem.MUL;
+
+        formulas.add(context.mkImplies(ops[d], context.mkAnd(divPrec,
+            context.mkEq(value, context.mkBVSDiv(e1, e2)))));
+        formulas.add(context.mkImplies(ops[s], context.mkAnd(subPrec,
+            context.mkEq(value, context.mkBVSub(e1, e2)))));
+        formulas.add(context.mkImplies(ops[a], context.mkAnd(addPrec,
+            context.mkEq(value, context.mkBVAdd(e1, e2)))));
+        formulas.add(context.mkImplies(ops[m], context.mkAnd(mulPrec,
+            context.mkEq(value, context.mkBVMul(e1, e2)))));
+
+        values.add(value);
+        opVars.add(ops);
+        leftVars.add(left);
+        rightVars.add(right);
+
+        return context.mkAnd(formulas.toArray(new BoolExpr[0]));
+    }
+
+    /**
+     * The literals of nodes 0 to k - 1 choosing operand c.
+     */
+    private BoolExpr[] uses(int c, int k) {
+        ArrayList<BoolExpr> lits = new ArrayList<>();
+
+        for (int j = Math.max(c - nums.length + 1, 0); j < k; j++) {
+            lits.add(leftVars.get(j)[c]);
+            lits.add(rightVars.get(j)[c]);
+        }
+
+        return lits.toArray(new BoolExpr[0]);
+    }
+
+    /**
+     * A tree of k nodes whose root computes the target: starting
+     * integers are used at most once (equal ones in the order of their
+     * indices) and every node but the root is used exactly once.
+     */
+    private BoolExpr treeFormula(int k) {
+        ArrayList<BoolExpr> formulas = new ArrayList<>();
+
+        for (int i = 0; i < nums.length; i++) {
+            BoolExpr[] uses = this.uses(i, k);
+            formulas.add(Z3Utils.atMostOne(context, uses));
+
+            for (int prev = i - 1; prev >= 0; prev--) {
+                if (nums[prev] == nums[i]) {
+                    formulas.add(context.mkImplies(context.mkOr(uses),
+                                                   context.mkOr(this.uses(prev, k))));
+                    break;
+                }
+            }
+        }
+
+        for (int j = 0; j < k - 1; j++) {
+            formulas.add(Z3Utils.exactlyOne(context, this.uses(nums.length + j, k)));
+        }
+
+        formulas.add(context.mkEq(values.get(k - 1), context.mkBV(target, bvBits)));
+
+        return context.mkAnd(formulas.toArray(new BoolExpr[0]));
+    }
+
+    private static boolean isTrue(Model m, BoolExpr var) {
+        Expr<?> value = m.getConstInterp(var);
+
+        return value != null && value.isTrue();
+    }
+
+    private static int chosen(Model m, BoolExpr[] vars) {
+        for (int i = 0; i < vars.length; i++) {
+            if (isTrue(m, vars[i])) {
+                return i;
+            }
+        }
+
+        throw new IllegalStateException("no literal chosen in model");
+    }
+
+    /**
+     * Appends the actions computing operand c in m to actions: the
+     * right operand is pushed before the left one, which is the top
+     * of the stack when the operation is applied.
+     */
+    private void appendTrace(Model m, int c, ArrayList<Integer> actions) {
+        if (c < nums.length) {
+            actions.add(ChiffresTransitionSystem.PUSH + c);
+            return;
+        }
+
+        int j = c - nums.length;
+
+        this.appendTrace(m, chosen(m, rightVars.get(j)), actions);
+        this.appendTrace(m, chosen(m, leftVars.get(j)), actions);
+        actions.add(chosen(m, opVars.get(j)));
+    }
+
+    /**
+     * The actions of the solution found by the last resolution,
+     * numbered as in {@link ChiffresTransitionSystem#getTrace}.
+     */
+    public int[] getTrace() {
+        if (trace == null) {
+            throw new IllegalStateException("no solution");
+        }
+
+        return trace.clone();
+    }
+
+    private void printParams() {
+        System.out.println("\nExpression tree parameters:");
+        System.out.println("- nums       : " + Arrays.toString(nums));
+        System.out.println("- target     : " + String.valueOf(target));
+        System.out.println("- bvBits     : " + String.valueOf(bvBits));
+        System.out.println("- noOverflows: " + String.valueOf(noOverflows));
+        System.out.println("- profile    : " + profile.getName());
+    }
+
+    private void printTrace() {
+        if (bvBits <= 64) {
+            System.out.print(Solution.replay(nums, target, bvBits, trace).toAnsi());
+        } else {
+            System.out.println("  " + Arrays.toString(trace));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package fr.n7.smt;
+
+import java.util.Arrays;
+
+/**
+ * A set of ints using open addressing with linear probing, so that
+ * values are never boxed. Elements cannot be removed.
+ */
+final class IntHashSet {
+
+    // marks free slots of the table, the value itself is kept apart
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[]   table;
+    private int     size;
+    private boolean hasFree;
+
+    IntHashSet() {
+        this(8);
+    }
+
+    /**
+     * @param expected the expected number of elements
+     */
+    IntHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(2 * expected - 1, 7)) << 1;
+
+        this.table = newTable(capacity);
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] t = new int[capacity];
+        Arrays.fill(t, FREE);
+
+        return t;
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Adds value to the set. Returns false if it was already present.
+     */
+    boolean add(int value) {
+        if (value == FREE) {
+            if (hasFree) {
+                return false;
+            }
+
+            hasFree = true;
+            size++;
+
+            return true;
+        }
+
+        int mask = table.length - 1;
+        int i = hash(value) & mask;
+
+        while (table[i] != FREE) {
+            if (table[i] == value) {
+                return false;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        table[i] = value;
+        size++;
+
+        if (2 * size > table.length) {
+            grow();
+        }
+
+        return true;
+    }
+
+    boolean contains(int value) {
+        if (value == FREE) {
+            return hasFree;
+        }
+
+        int mask = table.length - 1;
+        int i = hash(value) & mask;
+
+        while (table[i] != FREE) {
+            if (table[i] == value) {
+                return true;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        return false;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * The elements of the set in no particular order.
+     */
+    int[] toArray() {
+        int[] res = new int[size];
+        int n = 0;
+
+        if (hasFree) {
+            res[n++] = FREE;
+        }
+
+        for (int v : table) {
+            if (v != FREE) {
+                res[n++] = v;
+            }
+        }
+
+        return res;
+    }
+
+    private void grow() {
+        int[] old = table;
+        int mask = 2 * old.length - 1;
+        table = newTable(old.length * 2);
+
+        for (int v : old) {
+            if (v != FREE) {
+                int i = hash(v) & mask;
+
+                while (table[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+
+                table[i] = v;
+            }
+        }
+    }
+}
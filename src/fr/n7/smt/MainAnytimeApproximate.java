@@ -0,0 +1,51 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program printing the improving solutions of the approximate
+ * resolution as soon as they are found, on problems without exact
+ * solution.
+ *
+ */
+public class MainAnytimeApproximate {
+
+    private static int[][] nums = {
+        {2, 3, 5, 11},
+        {2, 3, 5, 7, 11}
+    };
+
+    private static int[] targets = {111, 2311};
+
+    private static int timeout = 30_000; // in milliseconds
+
+    public static void main(String[] args) {
+        for (int i = 0; i < nums.length; i++) {
+            System.out.println("\n\033[1mClosest to " + targets[i] + " (registers, " +
+                               "QF_BV, 16 bits)\033[0m");
+
+            long start = System.nanoTime();
+            Status s;
+
+            try (SolveSession session = new SolveSession(SolverProfile.QF_BV, nums[i],
+                                                         targets[i], 16, true)) {
+                ChiffresTransitionSystem ts = session.getTransitionSystem();
+                ts.setStackEncoding(StackEncoding.REGISTERS);
+
+                BMC bmc = session.newBMC(true, false);
+                bmc.setVerbose(false);
+                bmc.setApproxListener((model, steps, error) -> {
+                    long ms = (System.nanoTime() - start) / 1_000_000;
+
+                    System.out.printf("%8d ms: distance %d at step %d%n", ms, error, steps);
+                });
+
+                s = bmc.solve(timeout);
+            }
+
+            long ms = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("%s in %d ms%n", s, ms);
+        }
+    }
+}
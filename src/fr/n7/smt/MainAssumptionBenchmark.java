@@ -0,0 +1,48 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the push/pop loop of the exact resolution with
+ * the loop assuming activation literals (cf.
+ * {@link BMC#setAssumptions(boolean)}) on the complex problems.
+ *
+ */
+public class MainAssumptionBenchmark {
+
+    private static int[][] nums = {
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {8, 10, 2, 1, 5, 50}
+    };
+
+    private static int[] targets = {6176, 899};
+
+    private static int timeout = 60_000; // in milliseconds
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mPush/pop vs assumptions (complex problems, 14 bits)\033[0m");
+        System.out.printf("%-6s %-12s %-14s %11s%n",
+                          "target", "loop", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            for (boolean assumptions : new boolean[] {false, true}) {
+                Status s;
+                long start = System.nanoTime();
+
+                try (SolveSession session = new SolveSession(nums[i], targets[i],
+                                                             14, true)) {
+                    BMC bmc = session.newBMC(false, false);
+                    bmc.setVerbose(false);
+                    bmc.setAssumptions(assumptions);
+
+                    s = bmc.solve(timeout);
+                }
+
+                long ms = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.printf("%-6d %-12s %-14s %8d ms%n", targets[i],
+                                  assumptions ? "assumptions" : "push/pop", s, ms);
+            }
+        }
+    }
+}
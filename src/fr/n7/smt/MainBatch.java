@@ -0,0 +1,290 @@
+package fr.n7.smt;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Batch resolution of "Countdown" problems read from a CSV or JSONL
+ * file or from the standard input (cf. {@link BatchInstance}).
+ *
+ * Problems are solved by BMC on a bounded pool of workers, each one
+ * using its own Z3 context (cf. {@link ContextPool}). A JSON line is
+ * printed on the standard output as soon as a problem is solved,
+ * with its status, the depth and the actions of the solution (and
+ * whether {@link TraceVerifier} replays them as a solution), the
+ * time spent waiting for a worker and solving. A summary is printed
+ * on the standard error at the end.
+ *
+ * Each starting numeral has its own push variable, so that equal
+ * numerals can each be pushed once: the set of numerals already
+ * pushed is carried by a bit vector (cf.
+ * {@link ChiffresTransitionSystem#setUsedMask}) or, with
+ * --symmetries, symmetric sequences of actions are also forbidden
+ * (cf. {@link ChiffresTransitionSystem#setSymmetryBreaking}). Both
+ * give the same answers.
+ *
+ * Usage: MainBatch [-j workers] [-t timeout] [-c cache] [--registers]
+ *                  [--symmetries] [file | -]
+ *
+ */
+public class MainBatch {
+
+    private static final String[] OPS = {"div", "sub", "add", "mul"};
+
+    private static int           workers          = Runtime.getRuntime().availableProcessors();
+    private static int           timeout          = 20_000; // in milliseconds
+    private static String        cacheFile        = null;
+    private static boolean       registers        = false;
+    private static boolean       symmetryBreaking = false;
+    private static String        input            = "-";
+
+    private static final AtomicInteger[] counts = {
+        new AtomicInteger(), new AtomicInteger(), new AtomicInteger(), new AtomicInteger()
+    };
+
+    private static void usage() {
+        System.err.println("usage: MainBatch [-j workers] [-t timeout] [-c cache] " +
+                           "[--registers] [--symmetries] [file | -]");
+        System.exit(2);
+    }
+
+    private static void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-j":
+                workers = Integer.parseInt(args[++i]);
+                break;
+            case "-t":
+                timeout = Integer.parseInt(args[++i]);
+                break;
+            case "-c":
+                cacheFile = args[++i];
+                break;
+            case "--registers":
+                registers = true;
+                break;
+            case "--symmetries":
+                symmetryBreaking = true;
+                break;
+            default:
+                if (args[i].startsWith("-") && !args[i].equals("-")) {
+                    usage();
+                }
+                input = args[i];
+            }
+        }
+
+        if (workers <= 0) {
+            usage();
+        }
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+
+    private static String traceToJson(int[] nums, int[] trace) {
+        StringBuilder sb = new StringBuilder("[");
+
+        for (int i = 0; i < trace.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+
+            if (trace[i] >= ChiffresTransitionSystem.PUSH) {
+                sb.append("\"push ").append(nums[trace[i] - ChiffresTransitionSystem.PUSH])
+                  .append('"');
+            } else {
+                sb.append('"').append(OPS[trace[i]]).append('"');
+            }
+        }
+
+        return sb.append(']').toString();
+    }
+
+    private static synchronized void emit(PrintStream out, String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    /**
+     * Solves one problem and prints its result line.
+     */
+    private static void solve(BatchInstance pb, ContextPool pool, ResultCache cache,
+                              long submitted, PrintStream out) {
+        long start = System.nanoTime();
+        Status s = Status.UNKNOWN;
+        int[] trace = null;
+        boolean cached = false;
+        String error = null;
+
+        try {
+            ResultCache.Entry entry = cache == null ? null :
+                cache.lookup(pb.nums, pb.target, pb.bvBits, pb.noOverflows);
+
+            if (entry != null) {
+                s      = entry.getStatus();
+                trace  = entry.getTrace();
+                cached = true;
+            } else {
+                try (SolveSession session = new SolveSession(pool, pb.nums, pb.target,
+                                                             pb.bvBits, pb.noOverflows)) {
+                    ChiffresTransitionSystem ts = session.getTransitionSystem();
+                    ts.setSymmetryBreaking(symmetryBreaking);
+                    ts.setUsedMask(!symmetryBreaking);
+                    if (registers) {
+                        ts.setStackEncoding(StackEncoding.REGISTERS);
+                    }
+
+                    BMC bmc = session.newBMC(false, false);
+                    bmc.setVerbose(false);
+
+                    Solution solution = bmc.findSolution(timeout);
+
+                    s = solution.getStatus();
+                    if (solution.hasSolution()) {
+                        trace = solution.getActions();
+                    }
+                }
+
+                if (cache != null) {
+                    cache.store(pb.nums, pb.target, pb.bvBits, pb.noOverflows, s, trace);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "interrupted";
+        } catch (Throwable t) {
+            error = String.valueOf(t);
+        }
+
+        long end = System.nanoTime();
+
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"id\": ").append(quote(pb.id));
+
+        if (error != null) {
+            counts[3].incrementAndGet();
+            sb.append(", \"status\": \"ERROR\", \"error\": ").append(quote(error));
+        } else {
+            counts[s == Status.SATISFIABLE ? 0 : s == Status.UNSATISFIABLE ? 1 : 2]
+                .incrementAndGet();
+            sb.append(", \"status\": ").append(quote(s.name()));
+
+            if (trace != null) {
+                sb.append(", \"depth\": ").append(trace.length)
+                  .append(", \"trace\": ").append(traceToJson(pb.nums, trace));
+
+                // replayed without Z3 to catch encoding regressions
+                if (pb.bvBits <= 64) {
+                    sb.append(", \"verified\": ")
+                      .append(TraceVerifier.isSolution(pb.nums, pb.target, pb.bvBits,
+                                                       pb.noOverflows, trace));
+                }
+            }
+
+            sb.append(", \"cached\": ").append(cached);
+        }
+
+        sb.append(", \"waitMs\": ").append(TimeUnit.NANOSECONDS.toMillis(start - submitted))
+          .append(", \"solveMs\": ").append(TimeUnit.NANOSECONDS.toMillis(end - start))
+          .append('}');
+
+        emit(out, sb.toString());
+    }
+
+    public static void main(String[] args) throws Exception {
+        parseArgs(args);
+
+        PrintStream out = new PrintStream(System.out, false, "UTF-8");
+        long start = System.nanoTime();
+        int submitted = 0;
+
+        // at most two problems waiting per worker
+        Semaphore inFlight = new Semaphore(2 * workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+        try (BufferedReader in = input.equals("-") ?
+                 new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                 Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+             ContextPool pool = new ContextPool(workers);
+             ResultCache cache = cacheFile == null ? null :
+                 new ResultCache(Paths.get(cacheFile), 4096)) {
+
+            String line;
+            int lineNumber = 0;
+
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+
+                BatchInstance pb;
+
+                try {
+                    pb = BatchInstance.parse(line, lineNumber);
+                } catch (IllegalArgumentException e) {
+                    counts[3].incrementAndGet();
+                    emit(out, "{\"id\": " + quote(String.valueOf(lineNumber)) +
+                         ", \"status\": \"ERROR\", \"error\": " + quote(String.valueOf(e)) + "}");
+                    continue;
+                }
+
+                if (pb == null) {
+                    continue;
+                }
+
+                inFlight.acquire();
+                submitted++;
+
+                final long submittedAt = System.nanoTime();
+
+                executor.execute(() -> {
+                    try {
+                        solve(pb, pool, cache, submittedAt, out);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            System.err.println("MainBatch: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.err.printf("%d problems in %.1f s (%.0f per hour) with %d workers: " +
+                          "%d SAT, %d UNSAT, %d UNKNOWN, %d errors%n",
+                          submitted, seconds, submitted / seconds * 3600, workers,
+                          counts[0].get(), counts[1].get(), counts[2].get(),
+                          counts[3].get());
+    }
+}
@@ -0,0 +1,70 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the widths of bit vectors chosen by hand for
+ * some problems with the widths inferred from their numbers, and
+ * the resolution with the hand-picked width with the escalating one
+ * (cf. {@link EscalatingBMC}).
+ *
+ */
+public class MainBitWidthBenchmark {
+
+    private static int[][] nums = {
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {8, 10, 2, 1, 5, 50},
+        {100, 1, 2, 3, 4, 5},
+        {2, 3, 5, 7, 11},
+        {1, 2, 3, 4, 5},
+        {5, 5}
+    };
+
+    private static int[] targets = {6176, 899, 12, 2311, 361, 10};
+
+    private static int[] handBits = {14, 14, 16, 16, 16, 8};
+
+    private static int timeout = 60_000; // in milliseconds
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mBit widths (registers, QF_BV, no overflows)\033[0m");
+        System.out.printf("%-6s %4s %4s %4s  %-14s %9s  %-14s %4s %9s%n",
+                          "target", "hand", "min", "safe", "hand status", "time",
+                          "escalated", "bits", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            Status hand;
+            long start = System.nanoTime();
+
+            try (SolveSession session = new SolveSession(SolverProfile.QF_BV, nums[i],
+                                                         targets[i], handBits[i], true)) {
+                ChiffresTransitionSystem ts = session.getTransitionSystem();
+                ts.setStackEncoding(StackEncoding.REGISTERS);
+                ts.setSymmetryBreaking(true);
+
+                BMC bmc = session.newBMC(false, false);
+                bmc.setVerbose(false);
+
+                hand = bmc.solve(timeout);
+            }
+
+            long handMs = (System.nanoTime() - start) / 1_000_000;
+
+            EscalatingBMC escalating = new EscalatingBMC(SolverProfile.QF_BV, nums[i],
+                                                         targets[i]);
+            escalating.setStackEncoding(StackEncoding.REGISTERS);
+            escalating.setVerbose(false);
+
+            start = System.nanoTime();
+            Status escalated = escalating.solve(timeout);
+            long escalatedMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("%-6d %4d %4d %4d  %-14s %6d ms  %-14s %4d %6d ms%n",
+                              targets[i], handBits[i],
+                              ChiffresTransitionSystem.minimalBvBits(nums[i], targets[i]),
+                              ChiffresTransitionSystem.safeBvBits(nums[i], targets[i]),
+                              hand, handMs, escalated, escalating.getBvBits(),
+                              escalatedMs);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package fr.n7.smt;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Program solving problems twice through a persistent result cache:
+ * the second round (and any later run) is answered by the cache,
+ * permutations of the same problem included.
+ *
+ * The cache file is the first argument ("chiffres.cache" by
+ * default).
+ *
+ */
+public class MainCachedProblems {
+
+    private static int[][] nums = {
+        {10, 20, 30, 40},
+        {40, 30, 20, 10},
+        {10, 20, 30, 40},
+        {8, 10, 2, 1, 5, 50},
+        {50, 5, 1, 2, 10, 8}
+    };
+
+    private static int[] targets = {120, 120, 119, 899, 899};
+
+    private static int[] bvBits = {8, 8, 8, 16, 16};
+
+    private static int timeout = 20_000; // in milliseconds
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "chiffres.cache");
+
+        try (ResultCache cache = new ResultCache(file, 1024)) {
+            System.out.println("\n\033[1mResult cache (" + file + ", " +
+                               cache.size() + " entries)\033[0m");
+
+            for (int round = 1; round <= 2; round++) {
+                for (int i = 0; i < nums.length; i++) {
+                    long start = System.nanoTime();
+
+                    ResultCache.Entry e = cache.solve(nums[i], targets[i], bvBits[i],
+                                                      false, timeout);
+
+                    long us = (System.nanoTime() - start) / 1_000;
+
+                    System.out.printf("round %d %-6d %-60s %10d us%n", round,
+                                      targets[i], e, us);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package fr.n7.smt;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+
+import com.microsoft.z3.*;
+
+/**
+ * Program comparing the cardinality encodings available for the
+ * "exactly one action" constraint: size of the unrolled transition
+ * formulas and solving time on the simple and complex problems.
+ *
+ */
+public class MainCardinalityBenchmark {
+
+    private static int[][] nums = {
+        {10, 20, 30, 40},
+        {8, 10, 2, 1, 5, 50},
+        {3, 4, 6, 10, 12, 78, 89, 560}
+    };
+
+    private static int[] targets = {120, 899, 6176};
+
+    private static int[] bvBits = {8, 14, 14};
+
+    private static int timeout = 20_000; // in milliseconds
+
+    /**
+     * Number of distinct AST nodes and of arguments of these nodes
+     * in expr.
+     */
+    private static int[] dagSize(Expr<?> expr) {
+        int edges = 0;
+        HashSet<Integer> visited = new HashSet<>();
+        ArrayDeque<Expr<?>> todo = new ArrayDeque<>();
+        todo.push(expr);
+
+        while (!todo.isEmpty()) {
+            Expr<?> e = todo.pop();
+
+            if (visited.add(e.getId()) && e.isApp()) {
+                edges += e.getNumArgs();
+
+                for (Expr<?> arg : e.getArgs()) {
+                    todo.push(arg);
+                }
+            }
+        }
+
+        return new int[] { visited.size(), edges };
+    }
+
+    public static void main(String[] args) {
+        StringBuilder summary = new StringBuilder();
+
+        for (int i = 0; i < nums.length; i++) {
+            for (CardinalityEncoding enc : CardinalityEncoding.values()) {
+                int nodes = 0;
+                int edges = 0;
+
+                try (SolveSession session =
+                         new SolveSession(nums[i], targets[i], bvBits[i], true)) {
+                    ChiffresTransitionSystem ts = session.getTransitionSystem();
+                    ts.setCardinalityEncoding(enc);
+
+                    for (int step = 0; step < ts.getMaxNofSteps(); step++) {
+                        int[] size = dagSize(ts.transitionFormula(step));
+                        nodes += size[0];
+                        edges += size[1];
+                    }
+                }
+
+                Status s;
+                long start = System.nanoTime();
+
+                try (SolveSession session =
+                         new SolveSession(nums[i], targets[i], bvBits[i], true)) {
+                    ChiffresTransitionSystem ts = session.getTransitionSystem();
+                    BMC bmc = new BMC(ts, ts.getMaxNofSteps(), false, false, enc);
+
+                    s = bmc.solve(timeout);
+                }
+
+                long ms = (System.nanoTime() - start) / 1_000_000;
+
+                summary.append(String.format("%-6d %-15s %-14s %8d %8d %8d ms%n",
+                                             targets[i], enc, s, nodes, edges, ms));
+            }
+        }
+
+        System.out.println("\n\033[1mCardinality encodings\033[0m");
+        System.out.printf("%-6s %-15s %-14s %8s %8s %11s%n",
+                          "target", "encoding", "status", "nodes", "edges", "time");
+        System.out.print(summary);
+    }
+}
@@ -0,0 +1,72 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the encodings of the division (cf.
+ * {@link DivisionEncoding}) on the instances of
+ * {@link MainOneAction} and {@link MainComplexProblems}, with both
+ * encodings of the stack.
+ *
+ */
+public class MainDivisionBenchmark {
+
+    private static int[][] nums = {
+        {10, 4},
+        {10, 4},
+        {10, 4},
+        {10, 4},
+        {10, 4},
+        {4, 10},
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {8, 10, 2, 1, 5, 50}
+    };
+
+    private static int[] targets = {10, 14, 6, 40, 2, 2, 6176, 899};
+
+    private static int[] bvBits = {8, 8, 8, 8, 8, 8, 14, 14};
+
+    private static boolean[] noOverflows = {
+        false, false, false, false, false, false, true, true
+    };
+
+    private static int timeout = 60_000; // in milliseconds
+
+    private static void run(int i, StackEncoding stackEncoding,
+                            DivisionEncoding divisionEncoding) {
+        Status s;
+        long start = System.nanoTime();
+
+        try (SolveSession session = new SolveSession(SolverProfile.DEFAULT, nums[i],
+                                                     targets[i], bvBits[i],
+                                                     noOverflows[i])) {
+            ChiffresTransitionSystem ts = session.getTransitionSystem();
+            ts.setStackEncoding(stackEncoding);
+            ts.setDivisionEncoding(divisionEncoding);
+
+            BMC bmc = session.newBMC(false, false);
+            bmc.setVerbose(false);
+
+            s = bmc.solve(timeout);
+        }
+
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-6d %-6d %-10s %-21s %-14s %8d ms%n",
+                          targets[i], bvBits[i], stackEncoding, divisionEncoding, s, ms);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mDivision encodings\033[0m");
+        System.out.printf("%-6s %-6s %-10s %-21s %-14s %11s%n",
+                          "target", "bits", "stack", "division", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            for (StackEncoding stackEncoding : StackEncoding.values()) {
+                for (DivisionEncoding divisionEncoding : DivisionEncoding.values()) {
+                    run(i, stackEncoding, divisionEncoding);
+                }
+            }
+        }
+    }
+}
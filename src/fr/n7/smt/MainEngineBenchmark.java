@@ -0,0 +1,51 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the unrolling and Spacer engines, mostly on
+ * problems without solution.
+ *
+ */
+public class MainEngineBenchmark {
+
+    private static int[][] nums = {
+        {10, 20},
+        {10, 20, 30},
+        {2, 3, 5},
+        {10, 20, 30, 40}
+    };
+
+    private static int[] targets = {7, 17, 100, 119};
+
+    private static int timeout = 20_000; // in milliseconds
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mEngines (registers, 8 bits)\033[0m");
+        System.out.printf("%-6s %-10s %-14s %11s%n",
+                          "target", "engine", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            for (Engine engine : Engine.values()) {
+                Status s;
+                long start = System.nanoTime();
+
+                try (SolveSession session = new SolveSession(nums[i], targets[i],
+                                                             8, false)) {
+                    session.getTransitionSystem().setStackEncoding(StackEncoding.REGISTERS);
+
+                    BMC bmc = session.newBMC(false, false);
+                    bmc.setVerbose(false);
+                    bmc.setEngine(engine);
+
+                    s = bmc.solve(timeout);
+                }
+
+                long ms = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.printf("%-6d %-10s %-14s %8d ms%n", targets[i],
+                                  engine, s, ms);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program solving the problems of the other programs with the
+ * explicit solver and comparing it with BMC (registers, QF_BV).
+ *
+ */
+public class MainExplicitProblems {
+
+    private static int[][] nums = {
+        {10, 20, 30, 40},
+        {10, 20, 30, 40},
+        {10, 20, 30, 40},
+        {10, 20, 30, 40},
+        {10, 20, 30, 40},
+        {8, 10, 2, 1, 5, 50},
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {3, 7, 7, 11, 25, 50}
+    };
+
+    private static int[] targets = {120, 119, 119, 118, 118, 899, 6176, 999};
+
+    private static int[] bvBits = {4, 8, 14, 8, 8, 16, 14, 16};
+
+    private static boolean[] noOverflows = {
+        false, false, false, false, true, true, true, true
+    };
+
+    private static int timeout = 20_000; // in milliseconds
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mExplicit solver\033[0m");
+        System.out.printf("%-6s %-6s %-9s %-14s %-8s %9s %14s%n", "target", "bits",
+                          "overflows", "status", "closest", "time", "BMC time");
+
+        for (int i = 0; i < nums.length; i++) {
+            long start = System.nanoTime();
+
+            ExplicitChiffresSolver solver =
+                new ExplicitChiffresSolver(nums[i], targets[i], bvBits[i], noOverflows[i]);
+            solver.setVerbose(false);
+
+            Status s = solver.solve(timeout);
+
+            long ms = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+
+            Status bmcStatus;
+
+            try (SolveSession session = new SolveSession(SolverProfile.QF_BV, nums[i],
+                                                         targets[i], bvBits[i],
+                                                         noOverflows[i])) {
+                session.getTransitionSystem().setStackEncoding(StackEncoding.REGISTERS);
+
+                BMC bmc = session.newBMC(false, false);
+                bmc.setVerbose(false);
+
+                bmcStatus = bmc.solve(timeout);
+            }
+
+            long bmcMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("%-6d %-6d %-9s %-14s %-8d %6d ms %11d ms%s%n",
+                              targets[i], bvBits[i], noOverflows[i] ? "no" : "wrap",
+                              s, solver.getClosest(), ms, bmcMs,
+                              s == bmcStatus ? "" : " (BMC: " + bmcStatus + ")");
+        }
+
+        System.out.println();
+        new ExplicitChiffresSolver(nums[5], targets[5], bvBits[5], noOverflows[5]).solve(timeout);
+        new ExplicitChiffresSolver(nums[1], targets[1], bvBits[1], noOverflows[1]).solve(timeout);
+    }
+}
@@ -0,0 +1,74 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the stack machine unrolled by BMC (with both
+ * encodings of the stack) and the expression tree encoding of
+ * {@link ExpressionTreeSolver} on problems with 6 to 10 starting
+ * integers.
+ *
+ */
+public class MainExpressionTreeBenchmark {
+
+    private static int[][] nums = {
+        {8, 10, 2, 1, 5, 50},
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {2, 3, 5, 7, 11, 13, 17, 19},
+        {1, 2, 3, 4, 5, 6, 7, 8, 9, 10},
+        {25, 50, 75, 100, 3, 6, 9, 7, 1, 4}
+    };
+
+    private static int[] targets = {899, 6176, 2329, 3628, 8641};
+
+    private static int[] bvBits = {14, 14, 16, 16, 16};
+
+    private static int timeout = 60_000; // in milliseconds
+
+    private static void print(int i, String encoding, Status s, long start) {
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-3d %-6d %-6d %-10s %-14s %8d ms%n",
+                          nums[i].length, targets[i], bvBits[i], encoding, s, ms);
+    }
+
+    private static void runBMC(int i, StackEncoding encoding) {
+        Status s;
+        long start = System.nanoTime();
+
+        try (SolveSession session = new SolveSession(nums[i], targets[i],
+                                                     bvBits[i], true)) {
+            session.getTransitionSystem().setStackEncoding(encoding);
+
+            BMC bmc = session.newBMC(false, false);
+            bmc.setVerbose(false);
+
+            s = bmc.solve(timeout);
+        }
+
+        print(i, encoding.toString(), s, start);
+    }
+
+    private static void runTree(int i) {
+        long start = System.nanoTime();
+
+        ExpressionTreeSolver solver =
+            new ExpressionTreeSolver(SolverProfile.DEFAULT, nums[i], targets[i],
+                                     bvBits[i], true);
+        solver.setVerbose(false);
+
+        print(i, "TREE", solver.solve(timeout), start);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mStack machine and expression tree encodings\033[0m");
+        System.out.printf("%-3s %-6s %-6s %-10s %-14s %11s%n",
+                          "n", "target", "bits", "encoding", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            runBMC(i, StackEncoding.ARRAY);
+            runBMC(i, StackEncoding.REGISTERS);
+            runTree(i);
+        }
+    }
+}
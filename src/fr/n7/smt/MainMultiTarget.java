@@ -0,0 +1,84 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program enumerating the targets in [100, 299] reachable from five
+ * numbers with a single unrolling, and comparing it with independent
+ * BMC resolutions of a few targets and with the explicit solver.
+ *
+ */
+public class MainMultiTarget {
+
+    private static int[] nums = {8, 10, 2, 1, 5};
+
+    private static int lo = 100, hi = 299;
+
+    private static int bvBits = 16;
+
+    private static int nOfSingleRuns = 20;
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mMulti-target resolution of " +
+                           java.util.Arrays.toString(nums) + " in [" + lo + ", " +
+                           hi + "]\033[0m");
+
+        long start = System.nanoTime();
+        long ms;
+        int[] reachable;
+
+        try (SolveSession session = new SolveSession(SolverProfile.QF_BV, nums, 0,
+                                                     bvBits, false)) {
+            ChiffresTransitionSystem ts = session.getTransitionSystem();
+            ts.setStackEncoding(StackEncoding.REGISTERS);
+
+            MultiTargetBMC bmc = new MultiTargetBMC(ts, session.getProfile());
+            reachable = bmc.reachableTargets(lo, hi);
+
+            ms = (System.nanoTime() - start) / 1_000_000;
+
+            // a single target, with the clauses learnt by the enumeration
+            int t = reachable.length > 0 ? reachable[reachable.length - 1] : hi;
+            Status s = bmc.isReachable(t, -1);
+            System.out.println(t + ": " + s);
+
+            if (s == Status.SATISFIABLE) {
+                System.out.println("at step " + bmc.getDepth());
+                bmc.printModel();
+            }
+        }
+
+        int expected = 0;
+        for (int t = lo; t <= hi; t++) {
+            ExplicitChiffresSolver explicit =
+                new ExplicitChiffresSolver(nums, t, bvBits, false);
+            explicit.setVerbose(false);
+
+            if (explicit.solve(-1) == Status.SATISFIABLE) {
+                expected++;
+            }
+        }
+
+        System.out.printf("%d reachable targets (explicit solver: %d) in %d ms%n",
+                          reachable.length, expected, ms);
+
+        start = System.nanoTime();
+
+        for (int t = lo; t < lo + nOfSingleRuns; t++) {
+            try (SolveSession session = new SolveSession(SolverProfile.QF_BV, nums, t,
+                                                         bvBits, false)) {
+                session.getTransitionSystem().setStackEncoding(StackEncoding.REGISTERS);
+
+                BMC bmc = session.newBMC(false, false);
+                bmc.setVerbose(false);
+                bmc.solve(-1);
+            }
+        }
+
+        ms = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%d independent BMC runs in %d ms (%d ms per target, " +
+                          "about %d ms for the range)%n", nOfSingleRuns, ms,
+                          ms / nOfSingleRuns, ms / nOfSingleRuns * (hi - lo + 1));
+    }
+}
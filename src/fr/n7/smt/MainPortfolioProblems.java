@@ -0,0 +1,34 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program solving the complex problems with the default portfolio
+ * of configurations.
+ *
+ */
+public class MainPortfolioProblems {
+
+    private static int[][] nums = {
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {8, 10, 2, 1, 5, 50}
+    };
+
+    private static int[] target = {6176, 899};
+
+    private static int timeout = 20_000; // in milliseconds
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mRunning complex problems with a portfolio.\033[0m");
+
+        for (int i = 0; i < nums.length; i++) {
+            PortfolioBMC portfolio = new PortfolioBMC(nums[i], target[i], 14, true,
+                                                      PortfolioConfig.defaults());
+            PortfolioResult res = portfolio.solve(timeout);
+
+            System.out.println("* target " + target[i] + ": " + res);
+
+            assert res.getStatus() == Status.SATISFIABLE : "should be SAT!";
+        }
+    }
+}
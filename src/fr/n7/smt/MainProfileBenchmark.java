@@ -0,0 +1,57 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the solver profile presets on the complex and
+ * text problems.
+ *
+ */
+public class MainProfileBenchmark {
+
+    private static int[][] nums = {
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {8, 10, 2, 1, 5, 50},
+        {8, 10, 2, 1, 5, 50}
+    };
+
+    private static int[] targets = {6176, 899, 899};
+
+    private static int[] bvBits = {14, 14, 16};
+
+    private static int timeout = 20_000; // in milliseconds
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mSolver profiles\033[0m");
+        System.out.printf("%-6s %-6s %-12s %-14s %11s%n",
+                          "target", "bits", "profile", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            for (SolverProfile profile : SolverProfile.presets()) {
+                Status s;
+
+                if (!profile.supports("QF_AUFBVLIA")) {
+                    System.out.printf("%-6d %-6d %-12s %-14s%n", targets[i],
+                                      bvBits[i], profile.getName(), "n/a");
+                    continue;
+                }
+
+                long start = System.nanoTime();
+
+                try (SolveSession session = new SolveSession(profile, nums[i],
+                                                             targets[i], bvBits[i],
+                                                             true)) {
+                    BMC bmc = session.newBMC(false, false);
+                    bmc.setVerbose(false);
+
+                    s = bmc.solve(timeout);
+                }
+
+                long ms = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.printf("%-6d %-6d %-12s %-14s %8d ms%n",
+                                  targets[i], bvBits[i], profile.getName(), s, ms);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the array and register encodings of the stack
+ * on the instances of the other programs.
+ *
+ */
+public class MainStackBenchmark {
+
+    private static int[][] nums = {
+        {10, 4},
+        {10, 4},
+        {10, 20, 30, 40},
+        {10, 20, 30, 40},
+        {10, 20, 30, 40},
+        {10, 20, 30, 40},
+        {8, 10, 2, 1, 5, 50},
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {8, 10, 2, 1, 5, 50}
+    };
+
+    private static int[] targets = {2, 40, 120, 119, 118, 118, 899, 6176, 899};
+
+    private static int[] bvBits = {8, 8, 14, 14, 8, 8, 16, 14, 14};
+
+    private static boolean[] noOverflows = {
+        false, false, false, false, false, true, true, true, true
+    };
+
+    private static int timeout = 20_000; // in milliseconds
+
+    private static void run(int i, StackEncoding encoding, SolverProfile profile) {
+        Status s;
+        long start = System.nanoTime();
+
+        try (SolveSession session = new SolveSession(profile, nums[i], targets[i],
+                                                     bvBits[i], noOverflows[i])) {
+            session.getTransitionSystem().setStackEncoding(encoding);
+
+            BMC bmc = session.newBMC(false, false);
+            bmc.setVerbose(false);
+
+            s = bmc.solve(timeout);
+        }
+
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-6d %-6d %-10s %-10s %-14s %8d ms%n",
+                          targets[i], bvBits[i], encoding, profile.getName(), s, ms);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mStack encodings\033[0m");
+        System.out.printf("%-6s %-6s %-10s %-10s %-14s %11s%n",
+                          "target", "bits", "stack", "profile", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            run(i, StackEncoding.ARRAY, SolverProfile.DEFAULT);
+            run(i, StackEncoding.REGISTERS, SolverProfile.DEFAULT);
+            run(i, StackEncoding.REGISTERS, SolverProfile.QF_BV);
+            run(i, StackEncoding.REGISTERS, SolverProfile.BIT_BLAST);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package fr.n7.smt;
+
+/**
+ * Program printing the metrics of each step of the resolution of the
+ * second complex problem as JSON lines (cf. {@link BmcListener}).
+ *
+ * Run it with -XX:StartFlightRecording=filename=bmc.jfr in JAVA_OPTS
+ * to also record them as JFR events (cf. {@link BmcStepEvent}).
+ *
+ */
+public class MainStepMetrics {
+
+    private static int[] nums = {8, 10, 2, 1, 5, 50};
+
+    private static int target = 899;
+
+    private static int timeout = 20_000; // in milliseconds
+
+    public static void main(String[] args) {
+        for (StackEncoding stackEncoding : StackEncoding.values()) {
+            System.out.println("\n\033[1mStep metrics (" + stackEncoding +
+                               ", 14 bits)\033[0m");
+
+            try (SolveSession session = new SolveSession(nums, target, 14, true)) {
+                session.getTransitionSystem().setStackEncoding(stackEncoding);
+
+                BMC bmc = session.newBMC(false, false);
+                bmc.setVerbose(false);
+                bmc.setListener(System.out::println);
+
+                bmc.solve(timeout);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program measuring the effect of symmetry breaking on problems
+ * without solution and on a problem with duplicate numbers.
+ *
+ */
+public class MainSymmetryBenchmark {
+
+    private static int[][] nums = {
+        {10, 20, 30, 40},
+        {2, 3, 5, 7, 11},
+        {1, 2, 3, 4, 5},
+        {3, 4, 6, 10, 12},
+        {3, 7, 7, 11, 25, 50}
+    };
+
+    private static int[] targets = {119, 2311, 361, 1439, 999};
+
+    private static int timeout = 60_000; // in milliseconds
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mSymmetry breaking (registers, QF_BV, 16 bits)\033[0m");
+        System.out.printf("%-6s %-10s %-14s %11s%n",
+                          "target", "symmetries", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            for (boolean symmetryBreaking : new boolean[] {false, true}) {
+                Status s;
+                long start = System.nanoTime();
+
+                try (SolveSession session = new SolveSession(SolverProfile.QF_BV,
+                                                             nums[i], targets[i],
+                                                             16, true)) {
+                    ChiffresTransitionSystem ts = session.getTransitionSystem();
+                    ts.setStackEncoding(StackEncoding.REGISTERS);
+                    ts.setSymmetryBreaking(symmetryBreaking);
+
+                    BMC bmc = session.newBMC(false, false);
+                    bmc.setVerbose(false);
+
+                    s = bmc.solve(timeout);
+                }
+
+                long ms = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.printf("%-6d %-10s %-14s %8d ms%n", targets[i],
+                                  symmetryBreaking ? "broken" : "kept", s, ms);
+            }
+        }
+    }
+}
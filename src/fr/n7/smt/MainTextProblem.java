@@ -13,11 +13,9 @@ public class MainTextProblem {
     static int   target = 899;
 
     public static void main(String[] args) {
-        ChiffresTransitionSystem chiffresTS = new ChiffresTransitionSystem(nums, target, 16, true);
-        BMC solver = new BMC(chiffresTS, chiffresTS.getMaxNofSteps(),
-                             false, false);
+        try (SolveSession session = new SolveSession(nums, target, 16, true)) {
+            BMC solver = session.newBMC(false, false);
 
-        try {
             solver.solve(-1);
         } catch (Throwable t) {
             System.out.println("failed with error:");
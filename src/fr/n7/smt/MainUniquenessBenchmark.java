@@ -0,0 +1,69 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.Status;
+
+/**
+ * Program comparing the two encodings of the uniqueness of pushes
+ * (cf. {@link ChiffresTransitionSystem#setUsedMask}): constraints
+ * over the push variables of all previous steps or a used bit vector
+ * carried by the state. For each problem, prints the size of the
+ * DAG of the whole unrolling and the time of the resolution.
+ *
+ */
+public class MainUniquenessBenchmark {
+
+    private static int[][] nums = {
+        {10, 20, 30, 40},
+        {8, 10, 2, 1, 5, 50},
+        {3, 4, 6, 10, 12, 78, 89, 560},
+        {25, 50, 75, 100, 3, 6, 9, 7, 1, 4}
+    };
+
+    private static int[] targets = {118, 899, 6176, 8641};
+
+    private static int[] bvBits = {8, 14, 14, 16};
+
+    private static int timeout = 60_000; // in milliseconds
+
+    private static void run(int i, StackEncoding encoding, boolean usedMask) {
+        Status s;
+        int size = 0;
+        long start = System.nanoTime();
+
+        try (SolveSession session = new SolveSession(nums[i], targets[i],
+                                                     bvBits[i], true)) {
+            ChiffresTransitionSystem ts = session.getTransitionSystem();
+            ts.setStackEncoding(encoding);
+            ts.setUsedMask(usedMask);
+
+            for (int step = 0; step < ts.getMaxNofSteps(); step++) {
+                size += Z3Utils.dagSize(ts.transitionFormula(step));
+            }
+
+            BMC bmc = session.newBMC(false, false);
+            bmc.setVerbose(false);
+
+            start = System.nanoTime();
+            s = bmc.solve(timeout);
+        }
+
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-3d %-6d %-10s %-10s %8d %-14s %8d ms%n",
+                          nums[i].length, targets[i], encoding,
+                          usedMask ? "mask" : "previous", size, s, ms);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("\n\033[1mUniqueness of pushes\033[0m");
+        System.out.printf("%-3s %-6s %-10s %-10s %8s %-14s %11s%n",
+                          "n", "target", "stack", "uniqueness", "nodes", "status", "time");
+
+        for (int i = 0; i < nums.length; i++) {
+            for (StackEncoding encoding : StackEncoding.values()) {
+                run(i, encoding, false);
+                run(i, encoding, true);
+            }
+        }
+    }
+}
@@ -18,12 +18,11 @@ public class MainUtils {
                                boolean satExpected,
                                String message) {
         System.out.println("\n\n* Starting test " + message);
-        ChiffresTransitionSystem chiffresTS = new ChiffresTransitionSystem(nums, target, bvBits, noOverflows);
-        BMC solver = new BMC(chiffresTS, chiffresTS.getMaxNofSteps(), approximate, false);
-
         Status s = null;
 
-        try {
+        try (SolveSession session = new SolveSession(nums, target, bvBits, noOverflows)) {
+            BMC solver = session.newBMC(approximate, false);
+
             s = solver.solve(timeout);
         } catch (Throwable t) {
             System.out.println("failed with error:");
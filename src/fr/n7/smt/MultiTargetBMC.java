@@ -0,0 +1,216 @@
+package fr.n7.smt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import com.microsoft.z3.*;
+
+/**
+ * Incremental resolution of the problems of a "Countdown" transition
+ * system for many targets with a single unrolling.
+ *
+ * The transition relation is unrolled once up to the maximum number
+ * of steps in one solver. Transition k is only required if the
+ * activation literal active@k holds (active@k implies active@k-1),
+ * and the final state at step k, expressed with a symbolic target,
+ * is only required if the literal final@k holds (final@k implies
+ * active@k-1). The solver must satisfy one of the final@k literals:
+ * a model is a solution of depth k for the value of the target.
+ *
+ * A target is then queried with an assumption fixing the symbolic
+ * target, and all reachable targets of a range are enumerated by
+ * blocking each target found. Clauses learnt for a query are kept
+ * for the next ones.
+ */
+@SuppressWarnings("unchecked")
+public class MultiTargetBMC {
+
+    private ChiffresTransitionSystem system;
+    private Context                  context;
+    private Solver                   solver;
+    private BitVecExpr               target;
+    private int                      maxNOfSteps;
+
+    // final[k] is the literal choosing a solution of depth k, null if
+    // no solution can have depth k
+    private BoolExpr[]               finals;
+
+    // model of the last solution found
+    private Model                    model;
+
+    /**
+     * Unrolls system in a new solver created with profile.
+     *
+     * @param system the transition system, whose own target is ignored
+     * @param profile the profile used to create the solver
+     */
+    public MultiTargetBMC(ChiffresTransitionSystem system, SolverProfile profile) {
+        this.system      = system;
+        this.context     = system.getContext();
+        this.maxNOfSteps = system.getMaxNofSteps();
+        this.target      = context.mkBVConst("target", system.getBvBits());
+        this.finals      = new BoolExpr[maxNOfSteps + 1];
+
+        if (!profile.supports(system.getLogic())) {
+            throw new Error("solver profile " + profile.getName() +
+                            " cannot solve " + system.getLogic() + " problems");
+        }
+
+        this.solver = profile.mkSolver(context);
+        solver.add(system.initialStateFormula());
+
+        BoolExpr[] active = new BoolExpr[maxNOfSteps];
+        ArrayList<BoolExpr> anyFinal = new ArrayList<>();
+
+        for (int step = 0; step <= maxNOfSteps; step++) {
+            if (system.isFinalStateReachable(step)) {
+                finals[step] = context.mkBoolConst("final@" + step);
+
+                BoolExpr finalState = system.finalStateFormula(step, target);
+
+                if (step > 0) {
+                    finalState = context.mkAnd(finalState, active[step - 1]);
+                }
+
+                solver.add(context.mkImplies(finals[step], finalState));
+                anyFinal.add(finals[step]);
+            }
+
+            if (step < maxNOfSteps) {
+                active[step] = context.mkBoolConst("active@" + step);
+                solver.add(context.mkImplies(active[step],
+                                             system.transitionFormula(step)));
+
+                if (step > 0) {
+                    solver.add(context.mkImplies(active[step], active[step - 1]));
+                }
+            }
+        }
+
+        solver.add(context.mkOr(anyFinal.toArray(new BoolExpr[0])));
+    }
+
+    private void setTimeout(Deadline deadline) {
+        if (!deadline.isUnbounded()) {
+            Params p = context.mkParams();
+            p.add("timeout", deadline.z3Timeout());
+            solver.setParameters(p);
+        }
+    }
+
+    private Status check(Deadline deadline, BoolExpr... assumptions) {
+        if (deadline.expired()) {
+            return Status.UNKNOWN;
+        }
+
+        this.setTimeout(deadline);
+
+        Status s = solver.check(assumptions);
+        this.model = s == Status.SATISFIABLE ? solver.getModel() : null;
+
+        return s;
+    }
+
+    /**
+     * Checks if target can be reached.
+     *
+     * @param timeout the timeout to use in milliseconds. If negative,
+     *        no timeout is used
+     */
+    public Status isReachable(int target, int timeout) {
+        return this.check(Deadline.in(timeout),
+                          context.mkEq(this.target, system.toBvNum(target)));
+    }
+
+    /**
+     * Calls onTarget with each reachable target in [lo, hi] (signed
+     * bit vector values), in no particular order. Returns UNSAT once
+     * all targets are enumerated and UNKNOWN if the timeout expired.
+     *
+     * @param timeout the timeout of the whole enumeration in
+     *        milliseconds. If negative, no timeout is used
+     */
+    public Status enumerateTargets(int lo, int hi, int timeout, IntConsumer onTarget) {
+        Deadline deadline = Deadline.in(timeout);
+        Status s;
+
+        solver.push();
+
+        try {
+            solver.add(context.mkBVSLE(system.toBvNum(lo), target),
+                       context.mkBVSLE(target, system.toBvNum(hi)));
+
+            while ((s = this.check(deadline)) == Status.SATISFIABLE) {
+                int value = this.targetValue();
+                onTarget.accept(value);
+
+                solver.add(context.mkNot(context.mkEq(target, system.toBvNum(value))));
+            }
+        } finally {
+            solver.pop();
+        }
+
+        return s;
+    }
+
+    /**
+     * The target of the last solution found, as a signed value.
+     */
+    private int targetValue() {
+        int bvBits = system.getBvBits();
+        BigInteger value = ((BitVecNum) model.eval(target, true)).getBigInteger();
+
+        if (value.testBit(bvBits - 1)) {
+            value = value.subtract(BigInteger.ONE.shiftLeft(bvBits));
+        }
+
+        return value.intValue();
+    }
+
+    /**
+     * All reachable targets in [lo, hi], without timeout.
+     */
+    public int[] reachableTargets(int lo, int hi) {
+        IntHashSet found = new IntHashSet();
+        this.enumerateTargets(lo, hi, -1, found::add);
+
+        int[] res = found.toArray();
+        Arrays.sort(res);
+
+        return res;
+    }
+
+    /**
+     * The depth of the last solution found.
+     */
+    public int getDepth() {
+        if (model == null) {
+            throw new IllegalStateException("no solution");
+        }
+
+        for (int step = 0; step <= maxNOfSteps; step++) {
+            if (finals[step] != null && model.eval(finals[step], true).isTrue()) {
+                return step;
+            }
+        }
+
+        throw new IllegalStateException("no depth in model");
+    }
+
+    /**
+     * The actions of the last solution found by isReachable (cf.
+     * {@link ChiffresTransitionSystem#getTrace}).
+     */
+    public int[] getTrace() {
+        return system.getTrace(model, this.getDepth());
+    }
+
+    /**
+     * Prints the last solution found by isReachable.
+     */
+    public void printModel() {
+        system.printModel(model, this.getDepth());
+    }
+}
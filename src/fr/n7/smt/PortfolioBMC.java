@@ -0,0 +1,216 @@
+package fr.n7.smt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.microsoft.z3.*;
+
+/**
+ * A portfolio of exact BMC resolutions of a "Countdown" problem.
+ *
+ * Each configuration is solved with {@link BMC#solve(int)} in its own
+ * session (and therefore its own Z3 context) on its own thread. The
+ * first definitive status (SAT or UNSAT) is returned and the other
+ * resolutions are interrupted.
+ *
+ * A configuration with its own bit width solves another problem: a
+ * narrower width wraps around or, without overflows, may make the
+ * problem UNSAT. Its SAT results only count if their trace is a
+ * solution at the width of the problem (cf. {@link TraceVerifier}),
+ * and its UNSAT results never count.
+ *
+ * A configuration failing with an exception does not stop the others
+ * and is reported in the result (cf.
+ * {@link PortfolioResult#getFailures()}).
+ */
+public class PortfolioBMC {
+
+    private final int[]                 nums;
+    private final int                   target;
+    private final int                   bvBits;
+    private final boolean               noOverflows;
+    private final List<PortfolioConfig> configs;
+
+    // running resolutions, guarded by this
+    private final ArrayList<BMC>        running = new ArrayList<>();
+    private boolean                     decided = false;
+
+    /**
+     * Creates a portfolio for a "Countdown" problem.
+     *
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     * @param bvBits the number of bits in bitvectors used by the
+     *        configurations that do not choose their own width
+     * @param noOverflows a boolean that is true if you do not want
+     *        overflows with bitvectors
+     * @param configs the configurations to race
+     */
+    public PortfolioBMC(int[] nums, int target, int bvBits, boolean noOverflows,
+                        List<PortfolioConfig> configs) {
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("empty portfolio");
+        }
+
+        this.nums        = nums;
+        this.target      = target;
+        this.bvBits      = bvBits;
+        this.noOverflows = noOverflows;
+        this.configs     = configs;
+    }
+
+    /**
+     * Runs one configuration. The returned result has an UNKNOWN
+     * status if the resolution was interrupted.
+     */
+    private PortfolioResult run(PortfolioConfig config, int timeout, long start) {
+        int configBvBits = config.getBvBits(bvBits);
+
+        try (SolveSession session =
+                 new SolveSession(config.getProfile(), nums, target,
+                                  configBvBits, noOverflows)) {
+            ChiffresTransitionSystem ts = session.getTransitionSystem();
+            ts.setStackEncoding(config.getStackEncoding());
+
+            BMC bmc = new BMC(ts, ts.getMaxNofSteps(), false, false,
+                              config.getCardinality());
+            bmc.setProfile(config.getProfile());
+            bmc.setRandomSeed(config.getRandomSeed());
+            bmc.setVerbose(false);
+
+            synchronized (this) {
+                if (decided) {
+                    return new PortfolioResult(Status.UNKNOWN, config,
+                                               System.currentTimeMillis() - start);
+                }
+
+                running.add(bmc);
+            }
+
+            try {
+                Status s = bmc.solve(timeout);
+
+                if (configBvBits != bvBits) {
+                    s = this.checkOtherWidth(s, ts, bmc);
+                }
+
+                return new PortfolioResult(s, config,
+                                           System.currentTimeMillis() - start);
+            } finally {
+                synchronized (this) {
+                    running.remove(bmc);
+                }
+            }
+        }
+    }
+
+    /**
+     * The status s found with a bit width other than the problem's
+     * one as a status of the problem: SAT if the trace found is a
+     * solution of the problem, UNKNOWN otherwise.
+     */
+    private Status checkOtherWidth(Status s, ChiffresTransitionSystem ts, BMC bmc) {
+        if (s != Status.SATISFIABLE || bvBits > 64) {
+            return Status.UNKNOWN;
+        }
+
+        int[] trace = ts.getTrace(bmc.getModel(), bmc.getModelSteps());
+
+        return TraceVerifier.isSolution(nums, target, bvBits, noOverflows, trace) ?
+            s : Status.UNKNOWN;
+    }
+
+    /**
+     * Interrupts all running resolutions.
+     */
+    private synchronized void cancelAll() {
+        decided = true;
+
+        for (BMC bmc : running) {
+            bmc.interrupt();
+        }
+    }
+
+    /**
+     * Races all configurations and returns the first definitive
+     * status with the configuration that found it. Returns once all
+     * resolutions are finished.
+     *
+     * @param timeout the timeout given to each resolution. If
+     *        negative, no timeout is used
+     * @throws IllegalStateException if all configurations failed,
+     *         with the first failure as cause
+     */
+    public PortfolioResult solve(int timeout) {
+        final long start = System.currentTimeMillis();
+
+        synchronized (this) {
+            decided = false;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(configs.size());
+        CompletionService<PortfolioResult> results =
+            new ExecutorCompletionService<>(executor);
+
+        Map<Future<PortfolioResult>, PortfolioConfig> submitted = new HashMap<>();
+
+        for (PortfolioConfig config : configs) {
+            submitted.put(results.submit(() -> run(config, timeout, start)), config);
+        }
+
+        PortfolioResult winner = null;
+        Map<PortfolioConfig, Throwable> failures = new LinkedHashMap<>();
+
+        try {
+            for (int i = 0; i < configs.size(); i++) {
+                Future<PortfolioResult> done = results.take();
+                PortfolioResult res;
+
+                try {
+                    res = done.get();
+                } catch (ExecutionException e) {
+                    // a failing configuration does not stop the others
+                    failures.put(submitted.get(done), e.getCause());
+                    continue;
+                }
+
+                if (winner == null && res.getStatus() != Status.UNKNOWN) {
+                    winner = res;
+                    cancelAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll();
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+
+        if (failures.size() == configs.size()) {
+            IllegalStateException e =
+                new IllegalStateException("all configurations failed: " + failures.keySet(),
+                                          failures.values().iterator().next());
+            failures.values().stream().skip(1).forEach(e::addSuppressed);
+
+            throw e;
+        }
+
+        if (winner == null) {
+            return new PortfolioResult(Status.UNKNOWN, null, elapsed, failures);
+        }
+
+        return new PortfolioResult(winner.getStatus(), winner.getWinner(),
+                                   winner.getElapsedMillis(), failures);
+    }
+}
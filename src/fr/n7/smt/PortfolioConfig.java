@@ -0,0 +1,140 @@
+package fr.n7.smt;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable configuration of one exact BMC solve raced by
+ * {@link PortfolioBMC}. Configurations are derived from each other
+ * with the with* methods.
+ */
+public class PortfolioConfig {
+
+    private final String              name;
+    private final int                 bvBits;
+    private final int                 randomSeed;
+    private final CardinalityEncoding cardinality;
+    private final SolverProfile       profile;
+    private final StackEncoding       stackEncoding;
+
+    /**
+     * Creates a configuration using the bit width of the problem,
+     * the default seed of Z3, the pairwise cardinality encoding, the
+     * default solver profile and the array stack encoding.
+     *
+     * @param name the name used to report the winning configuration
+     */
+    public PortfolioConfig(String name) {
+        this(name, 0, -1, CardinalityEncoding.PAIRWISE, SolverProfile.DEFAULT,
+             StackEncoding.ARRAY);
+    }
+
+    private PortfolioConfig(String name, int bvBits, int randomSeed,
+                            CardinalityEncoding cardinality,
+                            SolverProfile profile, StackEncoding stackEncoding) {
+        this.name          = name;
+        this.bvBits        = bvBits;
+        this.randomSeed    = randomSeed;
+        this.cardinality   = cardinality;
+        this.profile       = profile;
+        this.stackEncoding = stackEncoding;
+    }
+
+    /**
+     * The same configuration using bvBits bits instead of the bit
+     * width of the problem. A non positive value means the bit width
+     * of the problem.
+     */
+    public PortfolioConfig withBvBits(int bvBits) {
+        return new PortfolioConfig(name, bvBits, randomSeed, cardinality, profile,
+                                   stackEncoding);
+    }
+
+    /**
+     * The same configuration with another random seed.
+     */
+    public PortfolioConfig withRandomSeed(int randomSeed) {
+        return new PortfolioConfig(name, bvBits, randomSeed, cardinality, profile,
+                                   stackEncoding);
+    }
+
+    /**
+     * The same configuration with another cardinality encoding.
+     */
+    public PortfolioConfig withCardinality(CardinalityEncoding cardinality) {
+        return new PortfolioConfig(name, bvBits, randomSeed, cardinality, profile,
+                                   stackEncoding);
+    }
+
+    /**
+     * The same configuration with another solver profile (logic
+     * specific solver, tactics...).
+     */
+    public PortfolioConfig withProfile(SolverProfile profile) {
+        return new PortfolioConfig(name, bvBits, randomSeed, cardinality, profile,
+                                   stackEncoding);
+    }
+
+    /**
+     * The same configuration with another stack encoding.
+     */
+    public PortfolioConfig withStackEncoding(StackEncoding stackEncoding) {
+        return new PortfolioConfig(name, bvBits, randomSeed, cardinality, profile,
+                                   stackEncoding);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * The bit width to use for a problem whose own bit width is
+     * problemBvBits.
+     */
+    public int getBvBits(int problemBvBits) {
+        return this.bvBits > 0 ? this.bvBits : problemBvBits;
+    }
+
+    public int getRandomSeed() {
+        return this.randomSeed;
+    }
+
+    public CardinalityEncoding getCardinality() {
+        return this.cardinality;
+    }
+
+    public SolverProfile getProfile() {
+        return this.profile;
+    }
+
+    public StackEncoding getStackEncoding() {
+        return this.stackEncoding;
+    }
+
+    /**
+     * A default portfolio of five configurations differing by their
+     * cardinality encoding, their random seed, their stack encoding
+     * and their solver.
+     */
+    public static List<PortfolioConfig> defaults() {
+        return Arrays.asList(
+            new PortfolioConfig("pairwise"),
+            new PortfolioConfig("sequential")
+                .withCardinality(CardinalityEncoding.SEQUENTIAL)
+                .withRandomSeed(1),
+            new PortfolioConfig("bimander")
+                .withCardinality(CardinalityEncoding.BIMANDER)
+                .withRandomSeed(2),
+            new PortfolioConfig("pseudo-boolean")
+                .withCardinality(CardinalityEncoding.PSEUDO_BOOLEAN)
+                .withRandomSeed(3),
+            new PortfolioConfig("registers-qf-bv")
+                .withStackEncoding(StackEncoding.REGISTERS)
+                .withProfile(SolverProfile.QF_BV));
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
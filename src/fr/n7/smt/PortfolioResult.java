@@ -0,0 +1,65 @@
+package fr.n7.smt;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.microsoft.z3.Status;
+
+/**
+ * The result of a {@link PortfolioBMC} resolution: the status, the
+ * configuration that produced it and the configurations that failed
+ * with an exception.
+ */
+public class PortfolioResult {
+
+    private final Status          status;
+    private final PortfolioConfig winner;
+    private final long            elapsedMillis;
+
+    private final Map<PortfolioConfig, Throwable> failures;
+
+    PortfolioResult(Status status, PortfolioConfig winner, long elapsedMillis) {
+        this(status, winner, elapsedMillis, Collections.emptyMap());
+    }
+
+    PortfolioResult(Status status, PortfolioConfig winner, long elapsedMillis,
+                    Map<PortfolioConfig, Throwable> failures) {
+        this.status        = status;
+        this.winner        = winner;
+        this.elapsedMillis = elapsedMillis;
+        this.failures      = Collections.unmodifiableMap(failures);
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * The configuration that found the status first, or null if no
+     * configuration reached a definitive status.
+     */
+    public PortfolioConfig getWinner() {
+        return this.winner;
+    }
+
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    /**
+     * The configurations that failed with an exception (unsupported
+     * logic, Z3 error...) and their exception, in the order of their
+     * failure.
+     */
+    public Map<PortfolioConfig, Throwable> getFailures() {
+        return this.failures;
+    }
+
+    @Override
+    public String toString() {
+        return this.status + " by " + (winner == null ? "none" : winner.getName()) +
+            " in " + this.elapsedMillis + " ms" +
+            (failures.isEmpty() ? "" : " (" + failures.size() + " failed: " +
+             failures.keySet() + ")");
+    }
+}
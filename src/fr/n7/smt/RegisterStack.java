@@ -0,0 +1,127 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.*;
+
+/**
+ * Stack encoded with one bit vector register per slot and a bit
+ * vector index, cf. {@link StackEncoding#REGISTERS}. Elements are
+ * read with if-then-else chains on the index and written by updating
+ * each register, so that no array theory is needed.
+ */
+class RegisterStack implements ChiffresStack {
+
+    private Context       context;
+    private ChiffresCache cache;
+    private int           nOfSlots;
+
+    // number of bits of the index
+    private int           idxBits;
+
+    /**
+     * @param nOfSlots the maximum size of the stack
+     */
+    RegisterStack(Context context, ChiffresCache cache, int nOfSlots) {
+        this.context  = context;
+        this.cache    = cache;
+        this.nOfSlots = Math.max(nOfSlots, 1);
+        this.idxBits  = 32 - Integer.numberOfLeadingZeros(this.nOfSlots + 1);
+    }
+
+    private BitVecExpr idx(int step) {
+        return cache.idxBvStateVar(step, idxBits);
+    }
+
+    private BoolExpr idxIs(int step, int value) {
+        return context.mkEq(idx(step), context.mkBV(value, idxBits));
+    }
+
+    @Override
+    public BoolExpr sizeIs(int step, int size) {
+        return idxIs(step, size);
+    }
+
+    @Override
+    public BoolExpr sizeAtLeast(int step, int size) {
+        return context.mkBVUGE(idx(step), context.mkBV(size, idxBits));
+    }
+
+    @Override
+    public BitVecExpr top(int step, int depth) {
+        BitVecExpr res = cache.registerStateVar(step, nOfSlots - 1);
+
+        for (int slot = nOfSlots - 2; slot >= 0; slot--) {
+            res = (BitVecExpr) context.mkITE(idxIs(step, slot + depth),
+                                             cache.registerStateVar(step, slot),
+                                             res);
+        }
+
+        return res;
+    }
+
+    @Override
+    public BitVecExpr bottom(int step) {
+        return cache.registerStateVar(step, 0);
+    }
+
+    /**
+     * A formula true iff registers at step + 1 are the registers at
+     * step with value written in the register of index idx + offset.
+     */
+    private BoolExpr writeFormula(int step, int offset, BitVecExpr value) {
+        BoolExpr[] conjuncts = new BoolExpr[nOfSlots];
+
+        for (int slot = 0; slot < nOfSlots; slot++) {
+            BitVecExpr reg = cache.registerStateVar(step, slot);
+            conjuncts[slot] =
+                context.mkEq(cache.registerStateVar(step + 1, slot),
+                             context.mkITE(idxIs(step, slot - offset), value, reg));
+        }
+
+        return context.mkAnd(conjuncts);
+    }
+
+    @Override
+    public BoolExpr pushFormula(int step, BitVecExpr value) {
+        BoolExpr wellIncrementedIndex =
+            context.mkEq(idx(step + 1),
+                         context.mkBVAdd(idx(step), context.mkBV(1, idxBits)));
+
+        return context.mkAnd(writeFormula(step, 0, value), wellIncrementedIndex);
+    }
+
+    @Override
+    public BoolExpr reduceFormula(int step, BitVecExpr value) {
+        BoolExpr wellDecrementedIndex =
+            context.mkEq(idx(step + 1),
+                         context.mkBVSub(idx(step), context.mkBV(1, idxBits)));
+
+        return context.mkAnd(wellDecrementedIndex, writeFormula(step, -2, value));
+    }
+
+    @Override
+    public Expr<?>[] stateVars(int step) {
+        Expr<?>[] vars = new Expr<?>[nOfSlots + 1];
+
+        for (int slot = 0; slot < nOfSlots; slot++) {
+            vars[slot] = cache.registerStateVar(step, slot);
+        }
+        vars[nOfSlots] = idx(step);
+
+        return vars;
+    }
+
+    @Override
+    public int nOfSlots() {
+        return this.nOfSlots;
+    }
+
+    @Override
+    public BitVecExpr slot(int step, int slot) {
+        return cache.registerStateVar(step, slot);
+    }
+
+    @Override
+    public int sizeIn(Model m, int step) {
+        return ((BitVecNum) m.eval(idx(step), true)).getInt();
+    }
+}
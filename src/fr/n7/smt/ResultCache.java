@@ -0,0 +1,471 @@
+package fr.n7.smt;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.microsoft.z3.Status;
+
+/**
+ * A cache of the results of "Countdown" problems placed in front of
+ * {@link BMC}.
+ *
+ * Problems are canonicalized (sorted starting integers, target, bit
+ * width and overflow mode), so that permutations of the same problem
+ * share their entry. An entry is a status (SAT or UNSAT) and, for SAT,
+ * the actions of a solution (cf. {@link ChiffresTransitionSystem#getTrace}).
+ * Traces are replayed before being stored and before being returned:
+ * an invalid trace is never returned.
+ *
+ * Recently used entries are kept in an LRU map. If the cache is
+ * persistent, all entries are also appended to a memory-mapped file
+ * and found back through an index built when the file is opened.
+ *
+ * All methods are thread safe.
+ */
+public class ResultCache implements AutoCloseable {
+
+    // file header: magic number and version
+    private static final int MAGIC   = 0x43484946; // "CHIF"
+    private static final int VERSION = 1;
+    private static final int HEADER  = 8;
+
+    // initial size of the mapped region
+    private static final int INITIAL_SIZE = 1 << 16;
+
+    /**
+     * A cached result.
+     */
+    public static final class Entry {
+        private final Status  status;
+        private final int[]   trace;
+        private final boolean hit;
+
+        private Entry(Status status, int[] trace, boolean hit) {
+            this.status = status;
+            this.trace  = trace;
+            this.hit    = hit;
+        }
+
+        public Status getStatus() {
+            return this.status;
+        }
+
+        /**
+         * The actions of the solution, pushes referring to the
+         * starting integers of the problem as given, or null if the
+         * problem has no solution.
+         */
+        public int[] getTrace() {
+            return this.trace == null ? null : this.trace.clone();
+        }
+
+        /**
+         * True iff the result was found in the cache.
+         */
+        public boolean isHit() {
+            return this.hit;
+        }
+
+        @Override
+        public String toString() {
+            return status + (trace == null ? "" : " " + Arrays.toString(trace)) +
+                (hit ? " (cached)" : "");
+        }
+    }
+
+    /**
+     * A canonicalized problem.
+     */
+    private static final class Key {
+        private final int[]   nums;
+        private final int     target;
+        private final int     bvBits;
+        private final boolean noOverflows;
+
+        Key(int[] sortedNums, int target, int bvBits, boolean noOverflows) {
+            this.nums        = sortedNums;
+            this.target      = target;
+            this.bvBits      = bvBits;
+            this.noOverflows = noOverflows;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+
+            return target == k.target && bvBits == k.bvBits &&
+                noOverflows == k.noOverflows && Arrays.equals(nums, k.nums);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Arrays.hashCode(nums);
+            h = 31 * h + target;
+            h = 31 * h + bvBits;
+
+            return 2 * h + (noOverflows ? 1 : 0);
+        }
+    }
+
+    /**
+     * A problem with the permutation sorting its starting integers:
+     * the i-th smallest integer is nums[order[i]].
+     */
+    private static final class Problem {
+        private final int[] order;
+        private final Key   key;
+
+        Problem(int[] nums, int target, int bvBits, boolean noOverflows) {
+            Integer[] idx = new Integer[nums.length];
+            for (int i = 0; i < nums.length; i++) {
+                idx[i] = i;
+            }
+            Arrays.sort(idx, (i, j) -> Integer.compare(nums[i], nums[j]));
+
+            this.order = new int[nums.length];
+            int[] sorted = new int[nums.length];
+
+            for (int i = 0; i < nums.length; i++) {
+                this.order[i] = idx[i];
+                sorted[i] = nums[idx[i]];
+            }
+
+            this.key = new Key(sorted, target, bvBits, noOverflows);
+        }
+
+        /**
+         * The trace with pushes referring to nums mapped to the
+         * sorted integers (toCanonical) or the converse.
+         */
+        int[] map(int[] trace, boolean toCanonical) {
+            int[] rank = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                rank[order[i]] = i;
+            }
+
+            int[] res = trace.clone();
+
+            for (int step = 0; step < res.length; step++) {
+                int i = res[step] - ChiffresTransitionSystem.PUSH;
+
+                if (i >= 0 && i < order.length) {
+                    res[step] = ChiffresTransitionSystem.PUSH +
+                        (toCanonical ? rank[i] : order[i]);
+                }
+            }
+
+            return res;
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> lru;
+
+    // persistent part, null if the cache is in memory only
+    private FileChannel                     channel;
+    private MappedByteBuffer                buffer;
+    private int                             writePos;
+    private HashMap<Key, Integer>           index;
+
+    /**
+     * Creates an in-memory cache.
+     *
+     * @param capacity the maximum number of entries kept in memory
+     */
+    public ResultCache(int capacity) {
+        this.lru = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache persisted in file, which is created if needed.
+     * Entries of an existing file are indexed, a truncated last entry
+     * being ignored.
+     *
+     * @param file the cache file
+     * @param capacity the maximum number of entries kept in memory
+     */
+    public ResultCache(Path file, int capacity) throws IOException {
+        this(capacity);
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        this.buffer  = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                   Math.max(channel.size(), INITIAL_SIZE));
+        this.index   = new HashMap<>();
+
+        if (buffer.getInt(0) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a result cache");
+        }
+
+        this.writePos = HEADER;
+
+        while (true) {
+            Key key = readKey(writePos);
+
+            if (key == null) {
+                break;
+            }
+
+            index.put(key, writePos);
+            writePos += 8 + buffer.getInt(writePos);
+        }
+    }
+
+    // Records are [length][crc32][payload], the payload being:
+    // noOverflows (byte), bvBits (byte), target (int), number of
+    // integers (byte), sorted integers (ints), status (byte), number
+    // of actions (byte), actions (bytes).
+
+    /**
+     * The length of the payload of the record at pos, -1 if there is
+     * no valid record there.
+     */
+    private int recordLength(int pos) {
+        if (pos + 8 > buffer.capacity()) {
+            return -1;
+        }
+
+        int length = buffer.getInt(pos);
+
+        if (length <= 0 || pos + 8 + length > buffer.capacity()) {
+            return -1;
+        }
+
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < length; i++) {
+            crc.update(buffer.get(pos + 8 + i));
+        }
+
+        return (int) crc.getValue() == buffer.getInt(pos + 4) ? length : -1;
+    }
+
+    private Key readKey(int pos) {
+        if (recordLength(pos) < 0) {
+            return null;
+        }
+
+        int p = pos + 8;
+        boolean noOverflows = buffer.get(p) != 0;
+        int bvBits = buffer.get(p + 1) & 0xff;
+        int target = buffer.getInt(p + 2);
+        int[] nums = new int[buffer.get(p + 6) & 0xff];
+
+        for (int i = 0; i < nums.length; i++) {
+            nums[i] = buffer.getInt(p + 7 + 4 * i);
+        }
+
+        return new Key(nums, target, bvBits, noOverflows);
+    }
+
+    /**
+     * The entry of the record at pos, traces being canonical.
+     */
+    private Entry readEntry(int pos) {
+        int p = pos + 8;
+        p += 7 + 4 * (buffer.get(p + 6) & 0xff);
+
+        Status status = buffer.get(p) != 0 ? Status.SATISFIABLE : Status.UNSATISFIABLE;
+        int[] trace = null;
+
+        if (status == Status.SATISFIABLE) {
+            trace = new int[buffer.get(p + 1) & 0xff];
+
+            for (int i = 0; i < trace.length; i++) {
+                trace[i] = buffer.get(p + 2 + i) & 0xff;
+            }
+        }
+
+        return new Entry(status, trace, true);
+    }
+
+    private void append(Key key, Entry entry) throws IOException {
+        int traceLength = entry.trace == null ? 0 : entry.trace.length;
+        int length = 7 + 4 * key.nums.length + 2 + traceLength;
+
+        if (writePos + 8 + length > buffer.capacity()) {
+            long size = Math.max(2L * buffer.capacity(), writePos + 8L + length);
+
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        int p = writePos + 8;
+        buffer.put(p, (byte) (key.noOverflows ? 1 : 0));
+        buffer.put(p + 1, (byte) key.bvBits);
+        buffer.putInt(p + 2, key.target);
+        buffer.put(p + 6, (byte) key.nums.length);
+        p += 7;
+
+        for (int num : key.nums) {
+            buffer.putInt(p, num);
+            p += 4;
+        }
+
+        buffer.put(p, (byte) (entry.status == Status.SATISFIABLE ? 1 : 0));
+        buffer.put(p + 1, (byte) traceLength);
+
+        for (int i = 0; i < traceLength; i++) {
+            buffer.put(p + 2 + i, (byte) entry.trace[i]);
+        }
+
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < length; i++) {
+            crc.update(buffer.get(writePos + 8 + i));
+        }
+
+        // the length is written last so that a torn record is ignored
+        buffer.putInt(writePos + 4, (int) crc.getValue());
+        buffer.putInt(writePos, length);
+
+        index.put(key, writePos);
+        writePos += 8 + length;
+    }
+
+    /**
+     * The cached result of a problem, null if there is none or if
+     * its trace is not a solution of the problem.
+     */
+    public synchronized Entry lookup(int[] nums, int target, int bvBits,
+                                     boolean noOverflows) {
+        Problem pb = new Problem(nums, target, bvBits, noOverflows);
+        Entry entry = lru.get(pb.key);
+
+        if (entry == null && index != null) {
+            Integer pos = index.get(pb.key);
+
+            if (pos != null) {
+                entry = readEntry(pos);
+                lru.put(pb.key, entry);
+            }
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.trace == null) {
+            return entry;
+        }
+
+        int[] trace = pb.map(entry.trace, false);
+
+        if (!TraceVerifier.isSolution(nums, target, bvBits, noOverflows, trace)) {
+            lru.remove(pb.key);
+            return null;
+        }
+
+        return new Entry(entry.status, trace, true);
+    }
+
+    /**
+     * Stores the result of a problem. Only SAT results with a trace
+     * solving the problem (which can only be checked up to 64 bits)
+     * and UNSAT results are stored.
+     *
+     * @throws IllegalArgumentException if bvBits is not in [1, 255],
+     *         the widths a record can hold
+     */
+    public synchronized void store(int[] nums, int target, int bvBits,
+                                   boolean noOverflows, Status status,
+                                   int[] trace) throws IOException {
+        if (bvBits < 1 || bvBits > 255) {
+            throw new IllegalArgumentException("bvBits must be in [1, 255]: " + bvBits);
+        }
+
+        if (status == Status.UNKNOWN ||
+            (status == Status.SATISFIABLE &&
+             (trace == null || bvBits > 64 ||
+              !TraceVerifier.isSolution(nums, target, bvBits, noOverflows, trace)))) {
+            return;
+        }
+
+        Problem pb = new Problem(nums, target, bvBits, noOverflows);
+        Entry entry = new Entry(status, trace == null || status != Status.SATISFIABLE ?
+                                null : pb.map(trace, true), true);
+
+        lru.put(pb.key, entry);
+
+        if (channel != null) {
+            append(pb.key, entry);
+        }
+    }
+
+    /**
+     * Returns the cached result of a problem or solves it with
+     * {@link BMC} (default session, no approximation) and caches its
+     * result. Each starting numeral gets its own push variable
+     * (symmetry breaking), so that an UNSAT result also holds when
+     * numerals repeat.
+     *
+     * @param timeout the timeout of the resolution in milliseconds.
+     *        If negative, no timeout is used
+     */
+    public Entry solve(int[] nums, int target, int bvBits, boolean noOverflows,
+                       int timeout) throws IOException {
+        Entry entry = lookup(nums, target, bvBits, noOverflows);
+
+        if (entry != null) {
+            return entry;
+        }
+
+        Solution solution;
+
+        try (SolveSession session = new SolveSession(nums, target, bvBits, noOverflows)) {
+            // value-keyed pushes would use equal numerals only once
+            session.getTransitionSystem().setSymmetryBreaking(true);
+
+            BMC bmc = session.newBMC(false, false);
+            bmc.setVerbose(false);
+
+            solution = bmc.findSolution(timeout);
+        }
+
+        Status s = solution.getStatus();
+        int[] trace = solution.hasSolution() ? solution.getActions() : null;
+
+        store(nums, target, bvBits, noOverflows, s, trace);
+
+        return new Entry(s, trace, false);
+    }
+
+    /**
+     * The number of entries of the persistent file, or of the memory
+     * if the cache is not persistent.
+     */
+    public synchronized int size() {
+        return index != null ? index.size() : lru.size();
+    }
+
+    /**
+     * Flushes the persistent file, if any, and closes it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            channel = null;
+        }
+    }
+}
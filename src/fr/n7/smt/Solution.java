@@ -0,0 +1,330 @@
+package fr.n7.smt;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import com.microsoft.z3.Status;
+
+/**
+ * The immutable result of a resolution of a "Countdown" problem: its
+ * status and, if a solution was found, its actions and the content
+ * of the stack after each action (cf.
+ * {@link ChiffresTransitionSystem#decode}).
+ *
+ * Actions are numbered as in {@link ChiffresTransitionSystem#getTrace}.
+ * The stacks of a solution with bit vectors of more than 64 bits are
+ * not decoded (cf. {@link #hasValues()}). Renderings (ANSI, infix,
+ * JSON) are computed when asked.
+ */
+public final class Solution {
+
+    private static final String[] OPS = {"div", "sub", "add", "mul"};
+    private static final String[] INFIX_OPS = {"/", "-", "+", "*"};
+
+    private final Status   status;
+    private final int[]    nums;
+    private final long     expected;
+    private final int[]    actions;
+
+    // stacks[k] is the stack after k actions, bottom first, null if
+    // the values are not decoded
+    private final long[][] stacks;
+
+    /**
+     * A result without solution.
+     */
+    Solution(Status status) {
+        this(status, null, 0, null, null);
+    }
+
+    /**
+     * A solution whose stacks are not decoded. The arrays are not
+     * copied.
+     */
+    Solution(Status status, int[] nums, int[] actions) {
+        this(status, nums, 0, actions, null);
+    }
+
+    /**
+     * A solution. The arrays are not copied.
+     *
+     * @param expected the target as a value of the stack
+     */
+    Solution(Status status, int[] nums, long expected, int[] actions, long[][] stacks) {
+        this.status   = status;
+        this.nums     = nums;
+        this.expected = expected;
+        this.actions  = actions;
+        this.stacks   = stacks;
+    }
+
+    /**
+     * The solution computed by replaying trace (numbered as in
+     * {@link ChiffresTransitionSystem#getTrace}) with the semantics of
+     * the bit vector operations on bvBits (at most 64) bits.
+     */
+    static Solution replay(int[] nums, int target, int bvBits, int[] trace) {
+        long[][] stacks = new long[trace.length + 1][];
+        stacks[0] = new long[0];
+
+        for (int step = 0; step < trace.length; step++) {
+            long[] stack = stacks[step];
+            int action = trace[step];
+
+            if (action >= ChiffresTransitionSystem.PUSH) {
+                stacks[step + 1] = Arrays.copyOf(stack, stack.length + 1);
+                stacks[step + 1][stack.length] =
+                    wrap(nums[action - ChiffresTransitionSystem.PUSH], bvBits);
+            } else {
+                long e1 = stack[stack.length - 1];
+                long e2 = stack[stack.length - 2];
+
+                stacks[step + 1] = Arrays.copyOf(stack, stack.length - 1);
+                stacks[step + 1][stack.length - 2] = wrap(apply(action, e1, e2), bvBits);
+            }
+        }
+
+        return new Solution(Status.SATISFIABLE, nums, wrap(target, bvBits), trace, stacks);
+    }
+
+    /**
+     * The signed value of x on bits (at most 64) bits.
+     */
+    private static long wrap(long x, int bits) {
+        return (x << (64 - bits)) >> (64 - bits);
+    }
+
+    /**
+     * The result of action on e1 (the top of the stack) and e2 as
+     * computed by the bit vector operations, before wrapping: as
+     * 2^bits divides 2^64, the wrapped result is exact even if the
+     * long operation overflows.
+     */
+    private static long apply(int action, long e1, long e2) {
+        switch (action) {
+        case ChiffresTransitionSystem.DIV:
+            if (e2 == 0) {
+                throw new IllegalStateException("division by 0 in trace");
+            }
+            return e1 / e2;
+        case ChiffresTransitionSystem.SUB:
+            return e1 - e2;
+        case ChiffresTransitionSystem.ADD:
+            return e1 + e2;
+        default:
+            return e1 * e2;
+        }
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * True iff a solution (maybe approximate) was found.
+     */
+    public boolean hasSolution() {
+        return this.actions != null;
+    }
+
+    /**
+     * True iff a solution was found and the content of its stacks is
+     * known (bit vectors of at most 64 bits).
+     */
+    public boolean hasValues() {
+        return this.stacks != null;
+    }
+
+    private void checkSolution() {
+        if (this.actions == null) {
+            throw new IllegalStateException("no solution (" + status + ")");
+        }
+    }
+
+    private void checkValues() {
+        this.checkSolution();
+
+        if (this.stacks == null) {
+            throw new UnsupportedOperationException("values of the solution not decoded");
+        }
+    }
+
+    /**
+     * True iff the solution computes the target, false if its values
+     * are not decoded.
+     */
+    public boolean isExact() {
+        return this.hasValues() && this.getValue() == expected;
+    }
+
+    /**
+     * The number of actions of the solution.
+     */
+    public int getDepth() {
+        this.checkSolution();
+
+        return this.actions.length;
+    }
+
+    /**
+     * The actions of the solution.
+     */
+    public int[] getActions() {
+        this.checkSolution();
+
+        return this.actions.clone();
+    }
+
+    /**
+     * The stack after step actions, bottom first.
+     */
+    public long[] getStack(int step) {
+        this.checkValues();
+
+        return this.stacks[step].clone();
+    }
+
+    /**
+     * The value computed by the solution, i.e. the bottom of the last
+     * stack.
+     */
+    public long getValue() {
+        this.checkValues();
+
+        return this.stacks[actions.length][0];
+    }
+
+    private static String actionName(int[] nums, int action) {
+        return action >= ChiffresTransitionSystem.PUSH ?
+            "push " + nums[action - ChiffresTransitionSystem.PUSH] : OPS[action];
+    }
+
+    /**
+     * The solution as printed by
+     * {@link ChiffresTransitionSystem#printModel}: one line per
+     * action with the stack after it, its elements in reverse video.
+     */
+    public String toAnsi() {
+        this.checkValues();
+
+        StringBuilder sb = new StringBuilder();
+        long[] slots = new long[Math.max(nums.length, 1)];
+
+        sb.append(String.format("  init %3s ~> ", " "));
+        appendSlots(sb, slots, 0);
+
+        for (int step = 0; step < actions.length; step++) {
+            int action = actions[step];
+
+            if (action >= ChiffresTransitionSystem.PUSH) {
+                sb.append(String.format("  push %3d ~> ",
+                                        nums[action - ChiffresTransitionSystem.PUSH]));
+            } else {
+                sb.append(String.format("  %s %4s ~> ", OPS[action], " "));
+            }
+
+            long[] stack = stacks[step + 1];
+            System.arraycopy(stack, 0, slots, 0, stack.length);
+            appendSlots(sb, slots, stack.length);
+        }
+
+        return sb.toString();
+    }
+
+    private static void appendSlots(StringBuilder sb, long[] slots, int size) {
+        sb.append('|');
+
+        for (int idx = 0; idx < slots.length; idx++) {
+            sb.append(idx < size ? "|\033[7m" : "|");
+            sb.append(String.format("%4d", slots[idx]));
+
+            if (idx < size) {
+                sb.append("\033[m");
+            }
+        }
+
+        sb.append('\n');
+    }
+
+    /**
+     * The expressions on the stack at the end of the solution in infix
+     * notation, bottom first, e.g. "(8 * 10) + 2".
+     */
+    public String toInfix() {
+        this.checkSolution();
+
+        ArrayDeque<String> exprs = new ArrayDeque<>();
+
+        for (int action : actions) {
+            if (action >= ChiffresTransitionSystem.PUSH) {
+                exprs.push(String.valueOf(nums[action - ChiffresTransitionSystem.PUSH]));
+            } else {
+                String e1 = exprs.pop();
+                String e2 = exprs.pop();
+                exprs.push("(" + e1 + " " + INFIX_OPS[action] + " " + e2 + ")");
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        while (!exprs.isEmpty()) {
+            String e = exprs.removeLast();
+
+            if (e.startsWith("(")) {
+                e = e.substring(1, e.length() - 1);
+            }
+
+            sb.append(sb.length() == 0 ? "" : ", ").append(e);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * The result as a JSON object on one line, with the status and,
+     * if a solution was found, its depth, actions and, if decoded,
+     * its value and stacks.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"status\": \"").append(status).append('"');
+
+        if (this.hasSolution()) {
+            sb.append(", \"depth\": ").append(actions.length);
+
+            if (this.hasValues()) {
+                sb.append(", \"value\": ").append(this.getValue())
+                  .append(", \"exact\": ").append(this.isExact());
+            }
+
+            sb.append(", \"actions\": [");
+
+            for (int i = 0; i < actions.length; i++) {
+                sb.append(i == 0 ? "\"" : ", \"").append(actionName(nums, actions[i])).append('"');
+            }
+
+            sb.append(']');
+
+            if (this.hasValues()) {
+                sb.append(", \"stacks\": [");
+
+                for (int i = 0; i < stacks.length; i++) {
+                    sb.append(i == 0 ? "" : ", ").append(Arrays.toString(stacks[i]));
+                }
+
+                sb.append(']');
+            }
+        }
+
+        return sb.append('}').toString();
+    }
+
+    @Override
+    public String toString() {
+        if (!this.hasSolution()) {
+            return status.toString();
+        }
+
+        return status + ": " + this.toInfix() +
+            (this.hasValues() ? " = " + this.getValue() : "");
+    }
+}
@@ -0,0 +1,133 @@
+package fr.n7.smt;
+
+import com.microsoft.z3.*;
+
+/**
+ * A solve session for one "Countdown" problem. The session owns a Z3
+ * context, either created for the session or borrowed from a
+ * {@link ContextPool}, and the transition system (and its cache)
+ * built in this context. Closing the session closes the context or
+ * gives it back to the pool: no formula, model or solver of the
+ * session may be used afterwards.
+ *
+ * Sessions are not thread safe, but distinct sessions can be used
+ * concurrently by distinct threads.
+ */
+public class SolveSession implements AutoCloseable {
+
+    private final ContextPool              pool;
+    private final Context                  context;
+    private final SolverProfile            profile;
+    private final ChiffresTransitionSystem system;
+
+    /**
+     * Creates a session with its own Z3 context.
+     *
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     * @param bvBits the number of bits in bitvectors
+     * @param noOverflows a boolean that is true if you do not want
+     *        overflows with bitvectors
+     */
+    public SolveSession(int[] nums, int target, int bvBits, boolean noOverflows) {
+        this(SolverProfile.DEFAULT, nums, target, bvBits, noOverflows);
+    }
+
+    /**
+     * Creates a session with its own Z3 context configured by profile.
+     *
+     * @param profile the profile of the context and of the solvers
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     * @param bvBits the number of bits in bitvectors
+     * @param noOverflows a boolean that is true if you do not want
+     *        overflows with bitvectors
+     */
+    public SolveSession(SolverProfile profile, int[] nums, int target,
+                        int bvBits, boolean noOverflows) {
+        this(null, profile, profile.newContext(), nums, target, bvBits,
+             noOverflows);
+    }
+
+    /**
+     * Creates a session with a Z3 context borrowed from pool. Waits
+     * for a context to be available if necessary.
+     *
+     * @param pool the pool of contexts
+     * @param nums an array with the starting integers
+     * @param target the target integer
+     * @param bvBits the number of bits in bitvectors
+     * @param noOverflows a boolean that is true if you do not want
+     *        overflows with bitvectors
+     */
+    public SolveSession(ContextPool pool, int[] nums, int target, int bvBits,
+                        boolean noOverflows) throws InterruptedException {
+        this(pool, pool.getProfile(), pool.acquire(), nums, target, bvBits,
+             noOverflows);
+    }
+
+    private SolveSession(ContextPool pool, SolverProfile profile,
+                         Context context, int[] nums, int target, int bvBits,
+                         boolean noOverflows) {
+        this.pool    = pool;
+        this.profile = profile;
+        this.context = context;
+
+        try {
+            this.system = new ChiffresTransitionSystem(context, nums, target,
+                                                       bvBits, noOverflows);
+        } catch (RuntimeException | Error e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the Z3 context of the session.
+     */
+    public Context getContext() {
+        return this.context;
+    }
+
+    /**
+     * Gets the solver profile of the session.
+     */
+    public SolverProfile getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Gets the transition system of the session.
+     */
+    public ChiffresTransitionSystem getTransitionSystem() {
+        return this.system;
+    }
+
+    /**
+     * Creates a BMC instance unrolling the transition system of the
+     * session up to its maximum number of steps with the solver
+     * profile of the session.
+     *
+     * @param useApprox to use approximate resolution when needed
+     * @param simulation if true, then BMC is used to simulate the system
+     */
+    public BMC newBMC(boolean useApprox, boolean simulation) {
+        BMC bmc = new BMC(this.system, this.system.getMaxNofSteps(),
+                          useApprox, simulation);
+        bmc.setProfile(this.profile);
+
+        return bmc;
+    }
+
+    /**
+     * Releases the Z3 context of the session.
+     */
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.release(this.context);
+        } else {
+            this.context.close();
+        }
+    }
+}
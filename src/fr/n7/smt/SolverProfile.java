@@ -0,0 +1,272 @@
+package fr.n7.smt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import com.microsoft.z3.*;
+
+/**
+ * An immutable description of how Z3 contexts and solvers are
+ * configured for a resolution: model, proof and unsat core
+ * generation (context level), logic specific solver or custom tactic
+ * pipeline and number of threads (solver level).
+ *
+ * Profiles are derived from the presets with the with* methods.
+ */
+public final class SolverProfile {
+
+    /**
+     * Models only, general purpose solver. Used by default.
+     */
+    public static final SolverProfile DEFAULT =
+        new SolverProfile("default", true, false, false, null, null, 0, false);
+
+    /**
+     * The historical configuration: models and proofs.
+     */
+    public static final SolverProfile PROOF =
+        DEFAULT.named("proof").withProofs(true);
+
+    /**
+     * Solver for arrays and bit vectors. Arrays must be indexed by bit
+     * vectors.
+     */
+    public static final SolverProfile QF_ABV =
+        DEFAULT.named("qf-abv").withLogic("QF_ABV");
+
+    /**
+     * Solver for bit vectors only.
+     */
+    public static final SolverProfile QF_BV =
+        DEFAULT.named("qf-bv").withLogic("QF_BV");
+
+    /**
+     * Simplification and equation solving before the SMT core.
+     */
+    public static final SolverProfile PREPROCESS =
+        DEFAULT.named("preprocess").withTactics("simplify", "solve-eqs", "smt");
+
+    /**
+     * Eager bit-blasting to a SAT solver. Only pure bit vector
+     * problems can be solved.
+     */
+    public static final SolverProfile BIT_BLAST =
+        DEFAULT.named("bit-blast").withTactics("simplify", "solve-eqs",
+                                               "bit-blast", "sat");
+
+    private final String   name;
+    private final boolean  models;
+    private final boolean  proofs;
+    private final boolean  unsatCores;
+    private final String   logic;
+    private final String[] tactics;
+    private final int      threads;
+    private final boolean  parallel;
+
+    // true once the global parallel mode of Z3 is enabled
+    private static volatile boolean parallelMode = false;
+
+    private SolverProfile(String name, boolean models, boolean proofs,
+                          boolean unsatCores, String logic, String[] tactics,
+                          int threads, boolean parallel) {
+        this.name       = name;
+        this.models     = models;
+        this.proofs     = proofs;
+        this.unsatCores = unsatCores;
+        this.logic      = logic;
+        this.tactics    = tactics;
+        this.threads    = threads;
+        this.parallel   = parallel;
+    }
+
+    /**
+     * All presets.
+     */
+    public static List<SolverProfile> presets() {
+        return Arrays.asList(DEFAULT, PROOF, QF_ABV, QF_BV, PREPROCESS, BIT_BLAST);
+    }
+
+    public SolverProfile named(String name) {
+        return new SolverProfile(name, models, proofs, unsatCores, logic,
+                                 tactics, threads, parallel);
+    }
+
+    public SolverProfile withModels(boolean models) {
+        return new SolverProfile(name, models, proofs, unsatCores, logic,
+                                 tactics, threads, parallel);
+    }
+
+    public SolverProfile withProofs(boolean proofs) {
+        return new SolverProfile(name, models, proofs, unsatCores, logic,
+                                 tactics, threads, parallel);
+    }
+
+    public SolverProfile withUnsatCores(boolean unsatCores) {
+        return new SolverProfile(name, models, proofs, unsatCores, logic,
+                                 tactics, threads, parallel);
+    }
+
+    /**
+     * The same profile using a solver for logic (e.g. "QF_BV") instead
+     * of a custom tactic pipeline. A null logic means the general
+     * purpose solver.
+     */
+    public SolverProfile withLogic(String logic) {
+        return new SolverProfile(name, models, proofs, unsatCores, logic,
+                                 null, threads, parallel);
+    }
+
+    /**
+     * The same profile using a solver built from the sequential
+     * composition of tactics (e.g. "simplify", "bit-blast", "sat")
+     * instead of a logic specific solver.
+     */
+    public SolverProfile withTactics(String... tactics) {
+        return new SolverProfile(name, models, proofs, unsatCores, null,
+                                 tactics.length == 0 ? null : tactics.clone(),
+                                 threads, parallel);
+    }
+
+    /**
+     * The same profile with threads solver threads. 0 means the
+     * default of Z3.
+     */
+    public SolverProfile withThreads(int threads) {
+        return new SolverProfile(name, models, proofs, unsatCores, logic,
+                                 tactics, threads, parallel);
+    }
+
+    /**
+     * The same profile with the parallel mode of Z3 enabled or not.
+     * Beware, this mode is a global Z3 parameter: it must be enabled
+     * for the whole process with {@link #enableParallelMode()} before
+     * a solver is created with the profile.
+     */
+    public SolverProfile withParallel(boolean parallel) {
+        return new SolverProfile(name, models, proofs, unsatCores, logic,
+                                 tactics, threads, parallel);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns true if solvers of the profile can decide formulas of
+     * logic (null meaning unknown). Logic specific solvers and bit
+     * blasting silently return wrong results or UNKNOWN on formulas
+     * outside of their logic.
+     */
+    public boolean supports(String logic) {
+        boolean bitBlast = this.tactics != null &&
+            Arrays.asList(this.tactics).contains("bit-blast");
+
+        if (bitBlast) {
+            return "QF_BV".equals(logic);
+        }
+
+        if (this.logic == null) {
+            return true;
+        }
+
+        return this.logic.equals(logic) ||
+            ("QF_ABV".equals(this.logic) && "QF_BV".equals(logic));
+    }
+
+    /**
+     * Creates a new Z3 context with the model, proof and unsat core
+     * generation of the profile.
+     */
+    public Context newContext() {
+        HashMap<String, String> cfg = new HashMap<>();
+        cfg.put("model", String.valueOf(this.models));
+        cfg.put("proof", String.valueOf(this.proofs));
+        cfg.put("unsat_core", String.valueOf(this.unsatCores));
+
+        return new Context(cfg);
+    }
+
+    /**
+     * Enables the parallel mode of Z3 for the whole process, i.e. for
+     * all the solvers created afterwards, whatever their profile. Z3
+     * has no per solver switch: call it once at startup to use
+     * profiles built with withParallel(true).
+     */
+    public static synchronized void enableParallelMode() {
+        Global.setParameter("parallel.enable", "true");
+        parallelMode = true;
+    }
+
+    /**
+     * Creates a solver in context with the logic, tactics and threads
+     * of the profile.
+     *
+     * @throws IllegalStateException if the profile is parallel and
+     *         the parallel mode was not enabled
+     */
+    public Solver mkSolver(Context context) {
+        if (this.parallel && !parallelMode) {
+            throw new IllegalStateException("profile " + this.name +
+                                            " needs SolverProfile.enableParallelMode()");
+        }
+
+        Solver solver;
+
+        if (this.tactics != null) {
+            solver = context.mkSolver(this.pipeline(context));
+        } else if (this.logic != null) {
+            solver = context.mkSolver(this.logic);
+        } else {
+            solver = context.mkSolver();
+        }
+
+        if (this.threads > 0) {
+            Params p = context.mkParams();
+            p.add("threads", this.threads);
+            solver.setParameters(p);
+        }
+
+        return solver;
+    }
+
+    private Tactic pipeline(Context context) {
+        Tactic[] ts = new Tactic[this.tactics.length];
+
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = context.mkTactic(this.tactics[i]);
+        }
+
+        if (ts.length == 1) {
+            return ts[0];
+        }
+
+        return context.andThen(ts[0], ts[1], Arrays.copyOfRange(ts, 2, ts.length));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(this.name);
+        sb.append(" (models: ").append(this.models)
+          .append(", proofs: ").append(this.proofs)
+          .append(", unsat cores: ").append(this.unsatCores);
+
+        if (this.logic != null) {
+            sb.append(", logic: ").append(this.logic);
+        }
+
+        if (this.tactics != null) {
+            sb.append(", tactics: ").append(String.join(" > ", this.tactics));
+        }
+
+        if (this.threads > 0) {
+            sb.append(", threads: ").append(this.threads);
+        }
+
+        if (this.parallel) {
+            sb.append(", parallel");
+        }
+
+        return sb.append(")").toString();
+    }
+}
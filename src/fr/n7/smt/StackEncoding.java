@@ -0,0 +1,19 @@
+package fr.n7.smt;
+
+/**
+ * The encodings of the stack of {@link ChiffresTransitionSystem}.
+ */
+public enum StackEncoding {
+    /**
+     * An array from integers to bit vectors and an integer index.
+     * Requires arrays, linear integer arithmetic and bit vectors.
+     */
+    ARRAY,
+
+    /**
+     * One bit vector register per stack slot (the stack size is
+     * bounded by the number of starting integers) and a bit vector
+     * index. The problem stays in pure QF_BV and can be bit-blasted.
+     */
+    REGISTERS
+}
@@ -0,0 +1,111 @@
+package fr.n7.smt;
+
+import java.util.Locale;
+
+import com.microsoft.z3.Status;
+
+/**
+ * The metrics of a step checked by the exact resolution of
+ * {@link BMC} (cf. {@link BmcListener}).
+ */
+public class StepMetrics {
+
+    private final int    step;
+    private final Status status;
+    private final long   buildNanos;
+    private final long   checkNanos;
+    private final long   modelNanos;
+    private final int    transitionNodes;
+    private final long   conflicts;
+    private final long   decisions;
+    private final double memoryMB;
+
+    StepMetrics(int step, Status status, long buildNanos, long checkNanos,
+                long modelNanos, int transitionNodes, long conflicts,
+                long decisions, double memoryMB) {
+        this.step            = step;
+        this.status          = status;
+        this.buildNanos      = buildNanos;
+        this.checkNanos      = checkNanos;
+        this.modelNanos      = modelNanos;
+        this.transitionNodes = transitionNodes;
+        this.conflicts       = conflicts;
+        this.decisions       = decisions;
+        this.memoryMB        = memoryMB;
+    }
+
+    public int getStep() {
+        return this.step;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * The time spent building the formulas added since the previous
+     * check: the transitions leading to the step and its final state.
+     */
+    public long getBuildNanos() {
+        return this.buildNanos;
+    }
+
+    /**
+     * The time spent in the check of the step.
+     */
+    public long getCheckNanos() {
+        return this.checkNanos;
+    }
+
+    /**
+     * The time spent getting the model of a SAT step, 0 otherwise.
+     */
+    public long getModelNanos() {
+        return this.modelNanos;
+    }
+
+    /**
+     * The number of distinct AST nodes of the transitions leading to
+     * the step, i.e. added since the previous check.
+     */
+    public int getTransitionNodes() {
+        return this.transitionNodes;
+    }
+
+    /**
+     * The number of conflicts reported by the solver after the check,
+     * -1 if it reports none.
+     */
+    public long getConflicts() {
+        return this.conflicts;
+    }
+
+    /**
+     * The number of decisions reported by the solver after the check,
+     * -1 if it reports none.
+     */
+    public long getDecisions() {
+        return this.decisions;
+    }
+
+    /**
+     * The memory used by Z3 after the check in MB, -1 if unknown.
+     */
+    public double getMemoryMB() {
+        return this.memoryMB;
+    }
+
+    /**
+     * The metrics as a JSON object on one line.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                             "{\"step\": %d, \"status\": \"%s\", \"buildNanos\": %d, " +
+                             "\"checkNanos\": %d, \"modelNanos\": %d, " +
+                             "\"transitionNodes\": %d, \"conflicts\": %d, " +
+                             "\"decisions\": %d, \"memoryMB\": %.2f}",
+                             step, status, buildNanos, checkNanos, modelNanos,
+                             transitionNodes, conflicts, decisions, memoryMB);
+    }
+}
@@ -0,0 +1,202 @@
+package fr.n7.smt;
+
+import java.util.Arrays;
+
+/**
+ * Replays the actions of a solution (numbered as in
+ * {@link ChiffresTransitionSystem#getTrace}) in plain Java to check
+ * that they solve a "Countdown" problem, without Z3.
+ *
+ * Values are longs, so bit vectors have at most 64 bits. Two
+ * arithmetics are available:
+ *
+ * - {@link Mode#BIT_VECTOR}: the semantics of the operations of the
+ *   bit vector encoding, i.e. add, sub and mul wrap around at bvBits
+ *   and div truncates toward 0 (bvsdiv)
+ * - {@link Mode#EXACT}: the semantics without overflows, i.e. the
+ *   starting integers, every intermediate value and the target must
+ *   be signed values on bvBits bits, as for
+ *   {@link ExplicitChiffresSolver} with noOverflows
+ *
+ * In both modes, a division by 0 is impossible, each starting
+ * integer is pushed at most once and the stack must finally contain
+ * only the target.
+ *
+ * A verifier reuses its buffers: once they are large enough,
+ * {@link #verify} allocates nothing. A verifier is not thread safe,
+ * {@link #isSolution} uses one verifier per thread.
+ */
+public final class TraceVerifier {
+
+    /**
+     * The arithmetic of a replay.
+     */
+    public enum Mode {
+        EXACT,
+        BIT_VECTOR;
+
+        /**
+         * The arithmetic of problems with or without overflows.
+         */
+        public static Mode of(boolean noOverflows) {
+            return noOverflows ? EXACT : BIT_VECTOR;
+        }
+    }
+
+    private static final ThreadLocal<TraceVerifier> VERIFIERS =
+        ThreadLocal.withInitial(TraceVerifier::new);
+
+    private long[] stack = new long[16];
+
+    // usedAt[i] == generation iff nums[i] was pushed by the current
+    // replay
+    private int[]  usedAt = new int[16];
+    private int    generation = 0;
+
+    // false iff the last value or apply failed
+    private boolean valid;
+
+    /**
+     * True iff trace solves the problem (cf. {@link TraceVerifier}),
+     * with the verifier of the current thread.
+     */
+    public static boolean isSolution(int[] nums, int target, int bvBits,
+                                     boolean noOverflows, int[] trace) {
+        return VERIFIERS.get().verify(nums, target, bvBits, Mode.of(noOverflows), trace);
+    }
+
+    /**
+     * True iff x is a signed value on bits bits.
+     */
+    private static boolean fits(long x, int bits) {
+        return bits == 64 || (x >> (bits - 1)) == (x >> 63);
+    }
+
+    /**
+     * The signed value on bits bits of x.
+     */
+    private static long wrap(long x, int bits) {
+        return (x << (64 - bits)) >> (64 - bits);
+    }
+
+    /**
+     * The value of the numeral x in mode, valid being set to false if
+     * x is not a value.
+     */
+    private long value(long x, int bits, Mode mode) {
+        if (mode == Mode.EXACT) {
+            valid = fits(x, bits);
+            return x;
+        }
+
+        valid = true;
+        return wrap(x, bits);
+    }
+
+    /**
+     * The result of action on e1 (the top of the stack) and e2, valid
+     * being set to false if the action is not possible.
+     */
+    private long apply(int action, long e1, long e2, int bits, Mode mode) {
+        long res;
+        boolean overflow;
+
+        switch (action) {
+        case ChiffresTransitionSystem.DIV:
+            if (e2 == 0) {
+                valid = false;
+                return 0;
+            }
+            res      = e1 / e2;
+            overflow = e1 == Long.MIN_VALUE && e2 == -1;
+            break;
+        case ChiffresTransitionSystem.SUB:
+            res      = e1 - e2;
+            overflow = ((e1 ^ e2) & (e1 ^ res)) < 0;
+            break;
+        case ChiffresTransitionSystem.ADD:
+            res      = e1 + e2;
+            overflow = ((e1 ^ res) & (e2 ^ res)) < 0;
+            break;
+        default:
+            res      = e1 * e2;
+            overflow = Math.multiplyHigh(e1, e2) != (res >> 63);
+            break;
+        }
+
+        if (mode == Mode.BIT_VECTOR) {
+            // 2^bits divides 2^64: the wrapped long result is exact
+            valid = true;
+            return wrap(res, bits);
+        }
+
+        valid = !overflow && fits(res, bits);
+        return res;
+    }
+
+    /**
+     * True iff trace solves the problem with the arithmetic of mode.
+     *
+     * @param bvBits the number of bits of values, in [1, 64]
+     */
+    public boolean verify(int[] nums, int target, int bvBits, Mode mode, int[] trace) {
+        if (bvBits < 1 || bvBits > 64) {
+            throw new IllegalArgumentException("bvBits must be in [1, 64]: " + bvBits);
+        }
+
+        if (usedAt.length < nums.length) {
+            usedAt = new int[Math.max(nums.length, 2 * usedAt.length)];
+            generation = 0;
+        }
+
+        if (stack.length < nums.length) {
+            stack = new long[Math.max(nums.length, 2 * stack.length)];
+        }
+
+        if (++generation == 0) {
+            Arrays.fill(usedAt, 0);
+            generation = 1;
+        }
+
+        long expected = value(target, bvBits, mode);
+        if (!valid) {
+            return false;
+        }
+
+        int size = 0;
+
+        for (int action : trace) {
+            if (action >= ChiffresTransitionSystem.PUSH) {
+                int i = action - ChiffresTransitionSystem.PUSH;
+
+                if (i >= nums.length || usedAt[i] == generation) {
+                    return false;
+                }
+
+                usedAt[i] = generation;
+                stack[size] = value(nums[i], bvBits, mode);
+
+                if (!valid) {
+                    return false;
+                }
+
+                size++;
+            } else {
+                if (action < 0 || size < 2) {
+                    return false;
+                }
+
+                long res = apply(action, stack[size - 1], stack[size - 2], bvBits, mode);
+
+                if (!valid) {
+                    return false;
+                }
+
+                stack[size - 2] = res;
+                size--;
+            }
+        }
+
+        return size == 1 && stack[0] == expected;
+    }
+}
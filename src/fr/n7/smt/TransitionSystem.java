@@ -11,6 +11,34 @@ import com.microsoft.z3.*;
  */
 abstract class TransitionSystem {
 
+    // Z3 context in which formulas are built
+    protected final Context context;
+
+    // encoding used for the cardinality constraints on actions
+    protected CardinalityEncoding cardinality = CardinalityEncoding.PAIRWISE;
+
+    /**
+     * Creates a transition system building its formulas in context.
+     */
+    protected TransitionSystem(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Gets the Z3 context in which formulas are built.
+     */
+    public Context getContext() {
+        return this.context;
+    }
+
+    /**
+     * Sets the encoding used for cardinality constraints in
+     * transition formulas built afterwards.
+     */
+    public void setCardinalityEncoding(CardinalityEncoding cardinality) {
+        this.cardinality = cardinality;
+    }
+
     /**
      * A Z3 boolean expression that holds if there is a valid
      * transition from state at step and state at step + 1.
@@ -29,10 +57,95 @@ abstract class TransitionSystem {
     abstract public BoolExpr finalStateFormula(int step);
 
     /**
-     * The criterion to be minimized when using approximate solver.
+     * Returns false if the final state formula cannot hold at step
+     * whatever the transitions taken before. BMC does not check the
+     * final state at such steps.
+     */
+    public boolean isFinalStateReachable(int step) {
+        return true;
+    }
+
+    /**
+     * The number of actions of the system, 0 if the system does not
+     * describe its transitions as actions.
+     */
+    public int getNofActions() {
+        return 0;
+    }
+
+    /**
+     * Returns false if action cannot be taken at step whatever the
+     * transitions taken before. Disabled actions are not encoded in
+     * transitionFormula(step).
+     */
+    public boolean isActionEnabled(int step, int action) {
+        return true;
+    }
+
+    /**
+     * The state variables at step of a step-invariant encoding of the
+     * system as constrained Horn clauses, or null if the system has no
+     * such encoding. They must be the only variables shared by
+     * hornTransitionFormulas(step) and hornTransitionFormulas(step + 1),
+     * and finalStateFormula(step) must only depend on them.
+     */
+    public Expr<?>[] hornStateVars(int step) {
+        return null;
+    }
+
+    /**
+     * A Z3 boolean expression that holds for the initial state of
+     * the Horn encoding.
+     */
+    public BoolExpr hornInitialStateFormula() {
+        return initialStateFormula();
+    }
+
+    /**
+     * Z3 boolean expressions whose disjunction holds if there is a
+     * valid transition from state at step to state at step + 1 of the
+     * Horn encoding, e.g. one expression per action. Each one becomes
+     * a Horn clause. Contrary to transitionFormula(step), they must
+     * not depend on step nor on previous steps: everything they need
+     * (e.g. the actions already taken) must be carried by the state.
+     */
+    public BoolExpr[] hornTransitionFormulas(int step) {
+        return null;
+    }
+
+    /**
+     * A Z3 boolean expression that holds if state at step may be an
+     * approximate solution, whose distance to the expected property
+     * is given by finalStateApproxCriterion(step).
+     */
+    public BoolExpr finalStateApproxFormula(int step) {
+        return context.mkTrue();
+    }
+
+    /**
+     * The criterion to be minimized when using approximate solver: a
+     * bit vector, compared as an unsigned integer, that is 0 iff the
+     * final state formula holds at step. Null if the system has no
+     * approximate resolution.
+     */
+    public BitVecExpr finalStateApproxCriterion(int step) {
+        return null;
+    }
+
+    /**
+     * The SMT-LIB logic of the formulas of the system, e.g. "QF_BV",
+     * or null if unknown.
+     */
+    public String getLogic() {
+        return null;
+    }
+
+    /**
+     * The solution of model m until steps transitions, or null if the
+     * system cannot decode its models. Beware, the model MUST exist!
      */
-    public Expr<?> finalStateApproxCriterion(int step) {
-        return Z3Utils.getZ3Context().mkInt(0);
+    public Solution decode(Model m, int steps) {
+        return null;
     }
 
     /**
@@ -6,36 +6,54 @@ package fr.n7.smt;
  * @author Christophe Garion
  */
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 
 import com.microsoft.z3.*;
 
 public class Z3Utils {
-    private static Context context = null;
 
     /**
-     * Get a Z3 context (that can b shared)
-     *
+     * Creates a new Z3 context configured with the default solver
+     * profile. The caller owns the context and must close it when
+     * done, see {@link SolveSession}.
      */
-    public static Context getZ3Context() {
-        if (context == null) {
-            // initialize Z3 context
-            HashMap<String, String> cfg = new HashMap<>();
-            cfg.put("model", "true");
-            cfg.put("proof", "true");
-
-            context = new Context(cfg);
+    public static Context newZ3Context() {
+        return SolverProfile.DEFAULT.newContext();
+    }
+
+    /**
+     * Returns the number of distinct AST nodes of expr.
+     */
+    public static int dagSize(Expr<?> expr) {
+        HashSet<Expr<?>> visited = new HashSet<>();
+        ArrayDeque<Expr<?>> todo = new ArrayDeque<>();
+        todo.push(expr);
+
+        while (!todo.isEmpty()) {
+            Expr<?> cur = todo.pop();
+
+            if (!visited.add(cur)) {
+                continue;
+            }
+
+            if (cur.isApp()) {
+                for (Expr<?> arg : cur.getArgs()) {
+                    todo.push(arg);
+                }
+            }
         }
 
-        return context;
+        return visited.size();
     }
 
     /**
      * Returns a Z3 boolean expression representing a formula
      * true iff at most one boolean expression in exprs is true.
      */
-    public static BoolExpr atMostOne(BoolExpr... exprs) {
+    public static BoolExpr atMostOne(Context context, BoolExpr... exprs) {
         ArrayList<BoolExpr> conjuncts = new ArrayList<>();
 
         for (BoolExpr expr : exprs) {
@@ -59,7 +77,116 @@ public class Z3Utils {
      * Returns a Z3 boolean expression representing a formula
      * true iff exactly one boolean expression in exprs is true.
      */
-    public static BoolExpr exactlyOne(BoolExpr... exprs) {
-        return context.mkAnd(context.mkOr(exprs), atMostOne(exprs));
+    public static BoolExpr exactlyOne(Context context, BoolExpr... exprs) {
+        return context.mkAnd(context.mkOr(exprs), atMostOne(context, exprs));
+    }
+
+    /**
+     * Returns a Z3 boolean expression representing a formula
+     * true iff at most one boolean expression in exprs is true,
+     * using a particular encoding.
+     */
+    public static BoolExpr atMostOne(Context context,
+                                     CardinalityEncoding encoding,
+                                     BoolExpr... exprs) {
+        if (exprs.length <= 1) {
+            return context.mkTrue();
+        }
+
+        switch (encoding) {
+        case SEQUENTIAL:
+            return sequentialAtMostOne(context, exprs);
+        case BIMANDER:
+            return bimanderAtMostOne(context, exprs);
+        case PSEUDO_BOOLEAN:
+            return context.mkAtMost(exprs, 1);
+        default:
+            return atMostOne(context, exprs);
+        }
+    }
+
+    /**
+     * Returns a Z3 boolean expression representing a formula
+     * true iff exactly one boolean expression in exprs is true,
+     * using a particular encoding.
+     */
+    public static BoolExpr exactlyOne(Context context,
+                                      CardinalityEncoding encoding,
+                                      BoolExpr... exprs) {
+        if (encoding == CardinalityEncoding.PSEUDO_BOOLEAN) {
+            int[] coeffs = new int[exprs.length];
+            Arrays.fill(coeffs, 1);
+
+            return context.mkPBEq(coeffs, exprs, 1);
+        }
+
+        return context.mkAnd(context.mkOr(exprs),
+                             atMostOne(context, encoding, exprs));
+    }
+
+    /**
+     * Sequential counter encoding: s_i is true iff one of the i + 1
+     * first expressions is true.
+     */
+    private static BoolExpr sequentialAtMostOne(Context context,
+                                                BoolExpr... exprs) {
+        int n = exprs.length;
+        BoolExpr[] s = new BoolExpr[n - 1];
+        ArrayList<BoolExpr> clauses = new ArrayList<>();
+
+        for (int i = 0; i < n - 1; i++) {
+            s[i] = (BoolExpr) context.mkFreshConst("amo_seq",
+                                                   context.getBoolSort());
+        }
+
+        clauses.add(context.mkOr(context.mkNot(exprs[0]), s[0]));
+
+        for (int i = 1; i < n - 1; i++) {
+            clauses.add(context.mkOr(context.mkNot(exprs[i]), s[i]));
+            clauses.add(context.mkOr(context.mkNot(s[i - 1]), s[i]));
+            clauses.add(context.mkOr(context.mkNot(exprs[i]),
+                                     context.mkNot(s[i - 1])));
+        }
+
+        clauses.add(context.mkOr(context.mkNot(exprs[n - 1]),
+                                 context.mkNot(s[n - 2])));
+
+        return context.mkAnd(clauses.stream().toArray(BoolExpr[]::new));
+    }
+
+    /**
+     * Bimander encoding with groups of two expressions: the
+     * expressions of group g force the auxiliary bits to the binary
+     * code of g.
+     */
+    private static BoolExpr bimanderAtMostOne(Context context,
+                                              BoolExpr... exprs) {
+        int n       = exprs.length;
+        int nGroups = (n + 1) / 2;
+        int nBits   = 32 - Integer.numberOfLeadingZeros(nGroups - 1);
+        BoolExpr[] bits = new BoolExpr[nBits];
+        ArrayList<BoolExpr> clauses = new ArrayList<>();
+
+        for (int b = 0; b < nBits; b++) {
+            bits[b] = (BoolExpr) context.mkFreshConst("amo_bim",
+                                                      context.getBoolSort());
+        }
+
+        for (int g = 0; g < nGroups; g++) {
+            if (2 * g + 1 < n) {
+                clauses.add(context.mkOr(context.mkNot(exprs[2 * g]),
+                                         context.mkNot(exprs[2 * g + 1])));
+            }
+
+            for (int i = 2 * g; i < Math.min(2 * g + 2, n); i++) {
+                for (int b = 0; b < nBits; b++) {
+                    BoolExpr bit = ((g >> b) & 1) == 1 ?
+                        bits[b] : context.mkNot(bits[b]);
+                    clauses.add(context.mkOr(context.mkNot(exprs[i]), bit));
+                }
+            }
+        }
+
+        return context.mkAnd(clauses.stream().toArray(BoolExpr[]::new));
     }
 }